@@ -0,0 +1,46 @@
+package rijndael;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of a full avalanche analysis (all variants and bits of one
+ * plaintext and key), as done by assignmentEncryption.
+ * There is no engine parameter: the analysis needs the state after every
+ * round of the reduced variants AES1 to AES4, which only the reference
+ * Rijndael computes. Samples per invocation take the place of batch size.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class AvalancheBenchmark {
+
+    @Param({"1", "8"})
+    public int samples; // Random plaintext/key pairs per invocation
+
+    private final Rijndael rj = new Rijndael();
+    private AvalancheShard shard;
+
+    @Setup
+    public void setup() {
+        shard = AvalancheShard.seeded(0, samples, 0, AvalancheShard.CELLS);
+    }
+
+    @Benchmark
+    public AvalancheAccumulator avalanche() {
+        return shard.run(rj);
+    }
+}
@@ -0,0 +1,94 @@
+package rijndael;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of batch en/decryption, per engine and batch size.
+ * Every invocation processes 4096 blocks in batches over one reused buffer,
+ * so batch sizes must divide 4096. Keys are taken in turn from a pool of
+ * distinctKeys keys across calls, like the bench mode does, so that pools
+ * larger than the key schedule cache miss. Scores are per block.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EngineBenchmark {
+
+    static final int OPS = 4096; // Blocks per invocation, independent of batch size
+
+    @Param({"reference", "cached", "key-agile"})
+    public String engine;
+
+    @Param({"1", "16", "256", "4096"})
+    public int batchSize;
+
+    @Param({"16", "65536"})
+    public int distinctKeys; // Number of different keys in the key stream
+
+    private BlockEngine blockEngine;
+    private byte[] blocks;
+    private byte[] keys;
+    private byte[] pool;
+    private int nextKey = 0;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        if (batchSize < 1 || OPS % batchSize != 0)
+            throw new IllegalArgumentException("Batch size must divide " + OPS + ": " + batchSize);
+        if (distinctKeys < 1) throw new IllegalArgumentException("Distinct keys must be positive: " + distinctKeys);
+        blockEngine = Engine.of(engine).create();
+        Random random = new Random(42);
+        pool = new byte[16*distinctKeys];
+        blocks = new byte[16*batchSize];
+        keys = new byte[16*batchSize];
+        random.nextBytes(pool);
+        random.nextBytes(blocks);
+    }
+
+    /**
+     * Take the keys of the next call from the pool.
+     */
+    private void nextKeys() {
+        for (int i = 0; i < batchSize; i++) {
+            System.arraycopy(pool, 16*nextKey, keys, 16*i, 16);
+            if (++nextKey == distinctKeys) nextKey = 0;
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public byte[] encryptBlocks() {
+        for (int i = 0; i < OPS; i += batchSize) {
+            nextKeys();
+            blockEngine.encryptBlocks(blocks, keys, batchSize); // Encrypts previous output again
+        }
+        return blocks;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPS)
+    public byte[] decryptBlocks() {
+        for (int i = 0; i < OPS; i += batchSize) {
+            nextKeys();
+            blockEngine.decryptBlocks(blocks, keys, batchSize);
+        }
+        return blocks;
+    }
+}
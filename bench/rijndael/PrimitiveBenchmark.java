@@ -0,0 +1,73 @@
+package rijndael;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks of the single block primitives of the reference algorithm.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PrimitiveBenchmark {
+
+    private final Rijndael rj = new Rijndael();
+    private final GaloisField gf = new GaloisField(256, 283);
+    private byte[] state;
+    private byte[] key;
+    private int a, b;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        state = new byte[16];
+        key = new byte[16];
+        random.nextBytes(state);
+        random.nextBytes(key);
+        a = random.nextInt(256);
+        b = random.nextInt(256);
+    }
+
+    @Benchmark
+    public byte[] encrypt() {
+        return rj.encrypt(state, key);
+    }
+
+    @Benchmark
+    public byte[] decrypt() {
+        return rj.decrypt(state, key);
+    }
+
+    @Benchmark
+    public byte[][] expand() {
+        return rj.expand(key);
+    }
+
+    @Benchmark
+    public byte[] mixColumns() {
+        return rj.mixColumns(state);
+    }
+
+    @Benchmark
+    public byte[] invMixColumns() {
+        return rj.invMixColumns(state);
+    }
+
+    @Benchmark
+    public int multiply() {
+        return gf.multiply(a, b);
+    }
+}
@@ -0,0 +1,4 @@
+package rijndael.jmh_generated;
+public class AvalancheBenchmark_jmhType extends AvalancheBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package rijndael.jmh_generated;
+public class PrimitiveBenchmark_jmhType extends PrimitiveBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,244 @@
+package rijndael;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Allocation regression check of the hot paths in steady state.
+ * Every path is warmed up, then run many times while the bytes allocated
+ * by the current thread are read from com.sun.management.ThreadMXBean.
+ * The result per block (or cell) must stay within the budget of the path:
+ * zero for the allocation-free engines, codec and batch mode, and the
+ * current cost for the reference Rijndael, whose byte[] returning methods
+ * allocate by design, so that they at least do not get worse.
+ * Run without -Drijndael.metrics, events and counters allocate.
+ */
+public class AllocationCheck {
+
+    private static final int WARMUP = 20000; // Operations before measuring
+    private static final int OPERATIONS = 20000; // Operations per measurement
+    private static final int ATTEMPTS = 3; // Best of, in case compilation finishes late
+    private static final int CALL_BLOCKS = 2*KeyAgileEngine.LANES + 1; // Blocks per engine call, includes a partial lane
+    private static final int RECORDS = 64; // Records per batch mode call
+
+    // Budgets of the reference paths in bytes: measured cost (4384 per block,
+    // 2168 per cell on JDK 17 with compressed oops) plus headroom
+    private static final double REFERENCE_BLOCK_BUDGET = 5000;
+    private static final double AVALANCHE_CELL_BUDGET = 2500;
+
+    private final com.sun.management.ThreadMXBean threads;
+    private final List<String> failed = new ArrayList<>();
+
+    /**
+     * Create a new check.
+     * @throws UnsupportedOperationException if the JVM cannot count
+     *         allocated bytes per thread
+     */
+    public AllocationCheck() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            throw new UnsupportedOperationException("Allocation counters not available on this JVM");
+        threads = (com.sun.management.ThreadMXBean)bean;
+        if (!threads.isThreadAllocatedMemorySupported())
+            throw new UnsupportedOperationException("Allocation counters not supported on this JVM");
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    /**
+     * Measure all paths and print a report.
+     * @param out report destination
+     * @return true if every path is within its budget
+     * @throws IOException if a stream path fails
+     */
+    public boolean run(PrintStream out) throws IOException {
+        out.println("ALLOCATION CHECK");
+        Random random = new Random(0);
+
+        // Engines, keys repeating so that the cache is warm
+        final byte[] pool = new byte[16*CALL_BLOCKS];
+        final byte[] blocks = new byte[16*CALL_BLOCKS];
+        random.nextBytes(pool);
+        random.nextBytes(blocks);
+        final BlockEngine cached = new CachedEngine(new KeyScheduleCache(4*RECORDS)); // Holds all keys
+        final BlockEngine keyAgile = new KeyAgileEngine();
+        check(out, "cached encrypt", "block", CALL_BLOCKS, 0, () -> cached.encryptBlocks(blocks, pool, CALL_BLOCKS));
+        check(out, "cached decrypt", "block", CALL_BLOCKS, 0, () -> cached.decryptBlocks(blocks, pool, CALL_BLOCKS));
+        check(out, "key-agile encrypt", "block", CALL_BLOCKS, 0, () -> keyAgile.encryptBlocks(blocks, pool, CALL_BLOCKS));
+        check(out, "key-agile decrypt", "block", CALL_BLOCKS, 0, () -> keyAgile.decryptBlocks(blocks, pool, CALL_BLOCKS));
+
+        // Codec
+        final byte[] text = new byte[BlockCodec.BINARY_CHARS];
+        check(out, "codec hex", "block", 1, 0, () -> {
+            BlockCodec.encodeHex(blocks, 0, text, 0);
+            BlockCodec.decodeHex(text, 0, blocks, 0);
+        });
+        check(out, "codec binary", "block", 1, 0, () -> {
+            BlockCodec.encodeBinary(blocks, 0, text, 0);
+            BlockCodec.decodeBinary(text, 0, blocks, 0);
+        });
+
+        // Batch mode: reader, engine and writer on in-memory streams
+        for (BlockFormat format: BlockFormat.values()) {
+            final BlockReader reader = new BlockReader(new Cycle(records(format, random)), format);
+            final BlockWriter writer = new BlockWriter(new Discard(), format);
+            final byte[] batch = new byte[16*RECORDS];
+            final byte[] keys = new byte[16*RECORDS];
+            check(out, "batch " + format.name().toLowerCase(Locale.ROOT), "block", RECORDS, 0, () -> {
+                int count = reader.read(batch, keys, RECORDS);
+                cached.encryptBlocks(batch, keys, count);
+                writer.write(batch, count);
+            });
+        }
+
+        // Reference Rijndael and avalanche analysis
+        final Rijndael rj = new Rijndael();
+        final byte[] block = new byte[16];
+        final byte[] key = new byte[16];
+        random.nextBytes(block);
+        random.nextBytes(key);
+        check(out, "reference encrypt", "block", 1, REFERENCE_BLOCK_BUDGET, () -> rj.encrypt(block, key));
+        final AvalancheShard shard = AvalancheShard.fixed(block, key, 0, AvalancheShard.CELLS);
+        check(out, "avalanche", "cell", AvalancheShard.CELLS, AVALANCHE_CELL_BUDGET, () -> shard.run(rj));
+
+        if (failed.isEmpty()) {
+            out.println("Result:\t\tPASS");
+            return true;
+        }
+        out.println("Result:\t\tFAIL (" + String.join(", ", failed) + ")");
+        return false;
+    }
+
+    /**
+     * Measure one path and compare it with its budget.
+     * @param out report destination
+     * @param path name of the path
+     * @param unit unit of work, e.g. block
+     * @param units units per operation
+     * @param budget allowed bytes per unit
+     * @param operation operation
+     * @throws IOException if the operation fails
+     */
+    private void check(PrintStream out, String path, String unit, int units, double budget, Operation operation)
+            throws IOException {
+        int operations = Math.max(1, OPERATIONS / units);
+        for (int i = 0; i < Math.max(1, WARMUP / units); i++) operation.run();
+        long best = Long.MAX_VALUE;
+        for (int attempt = 0; attempt < ATTEMPTS && best > 0; attempt++) {
+            long before = allocated();
+            for (int i = 0; i < operations; i++) operation.run();
+            long after = allocated();
+            best = Math.min(best, after - before - overhead());
+        }
+        double perUnit = Math.max(0, best) / ((double)operations*units);
+        boolean ok = perUnit <= budget;
+        out.printf("%-20s%10.1f bytes/%-6s budget %6.0f  %s%n", path + ":", perUnit, unit, budget, ok ? "ok" : "EXCEEDED");
+        if (!ok) failed.add(path);
+    }
+
+    /**
+     * Bytes allocated by the current thread so far.
+     * @return bytes
+     */
+    private long allocated() {
+        return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Bytes allocated by reading the counter itself.
+     * @return bytes
+     */
+    private long overhead() {
+        long before = allocated();
+        return allocated() - before;
+    }
+
+    /**
+     * Batch mode input of random records.
+     * @param format record format
+     * @param random random source
+     * @return encoded records
+     * @throws IOException never
+     */
+    private static byte[] records(BlockFormat format, Random random) throws IOException {
+        byte[] blocks = new byte[16*RECORDS];
+        byte[] keys = new byte[16*RECORDS];
+        random.nextBytes(blocks);
+        random.nextBytes(keys);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        if (format == BlockFormat.RAW) {
+            for (int i = 0; i < RECORDS; i++) {
+                result.write(blocks, 16*i, 16);
+                result.write(keys, 16*i, 16);
+            }
+            return result.toByteArray();
+        }
+        byte[] text = new byte[BlockCodec.BINARY_CHARS];
+        int chars = format == BlockFormat.HEX ? BlockCodec.HEX_CHARS : BlockCodec.BINARY_CHARS;
+        for (int i = 0; i < RECORDS; i++) {
+            for (byte[] src: new byte[][] {blocks, keys}) {
+                if (format == BlockFormat.HEX) BlockCodec.encodeHex(src, 16*i, text, 0);
+                else BlockCodec.encodeBinary(src, 16*i, text, 0);
+                result.write(text, 0, chars);
+                result.write(src == blocks ? ' ' : '\n');
+            }
+        }
+        return result.toByteArray();
+    }
+
+    /**
+     * Path under test.
+     */
+    private interface Operation {
+        void run() throws IOException;
+    }
+
+    /**
+     * Endless input repeating the same bytes.
+     */
+    private static final class Cycle extends InputStream {
+
+        private final byte[] data;
+        private int position = 0;
+
+        Cycle(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read() {
+            int result = data[position] & 0xff;
+            position = (position+1) % data.length;
+            return result;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int n = Math.min(len, data.length - position);
+            System.arraycopy(data, position, b, off, n);
+            position = (position+n) % data.length;
+            return n;
+        }
+    }
+
+    /**
+     * Output discarding everything.
+     */
+    private static final class Discard extends OutputStream {
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
@@ -1,7 +1,15 @@
 package rijndael;
 
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -12,16 +20,23 @@ import java.util.logging.Logger;
  * @author prouast (c3220501), PNorth (c3148112)
  */
 public class Application {
+    
+    private static final int BATCH_SIZE = 4096; // Records per batch
 
     /**
      * Main method for this assignment.
      * - Read inputs: Plaintext and key from selected input file and Ciphertext
      *  and key from selected input file.
      * - Call the respective methods from Rijndael.java
+     * If arguments are given, run the respective non-interactive mode instead.
      * @param args the command line arguments
      */
     public static void main(String[] args) {
         
+        if (args.length > 0) {
+            System.exit(runMode(args));
+        }
+        
         Scanner console = new Scanner(System.in); // Takes system input
         String plaintextEncryption = "";
         String keyEncryption = "";
@@ -85,4 +100,167 @@ public class Application {
 
             }
         }
+    
+    /**
+     * Non-interactive modes.
+     * - encrypt: encryption and avalanche analysis of a P/K input file
+     * - decrypt: decryption of a C/K input file
+     * - batch: en/decryption of a stream of (block, key) records
+     * - bench: throughput and latency measurement on this host
+     * - verify: differential verification of the engines against the JDK and the reference
+     * - check-allocation: allocation budgets of the hot paths
+     * - check-report: round trip of the binary report format
+     * - convert: convert a binary report to csv or json
+     * - worker: run one avalanche shard and save its accumulator
+     * - campaign: run a sharded avalanche campaign in worker processes
+     * - merge: combine saved avalanche accumulators
+     * @param args the command line arguments, starting with the mode
+     * @return exit code
+     */
+    static int runMode(String[] args) {
+        Rijndael rj = new Rijndael();
+        AvalancheCoordinator coordinator = new AvalancheCoordinator();
+        try {
+            switch (args[0]) {
+                case "encrypt": {
+                    Options options = Options.parse(args, 1);
+                    String[] input = readPair(options.require("in"));
+                    File output = new File(options.get("out", "output_encryption.txt"));
+                    if (options.has("samples")) {
+                        ReportFormat format = ReportFormat.of(options.get("format", "csv"));
+                        try (ReportSink samples = format.open(new File(options.get("samples", null)))) {
+                            rj.assignmentEncryption(input[0], input[1], output, samples);
+                        }
+                    } else {
+                        rj.assignmentEncryption(input[0], input[1], output, null);
+                    }
+                    return 0;
+                }
+                case "decrypt": {
+                    Options options = Options.parse(args, 1);
+                    String[] input = readPair(options.require("in"));
+                    rj.assignmentDecryption(input[0], input[1], new File(options.get("out", "output_decryption.txt")));
+                    return 0;
+                }
+                case "batch": {
+                    Options options = Options.parse(args, 1);
+                    BlockFormat inFormat = BlockFormat.of(options.get("format", "hex"));
+                    BlockFormat outFormat = BlockFormat.of(options.get("out-format", inFormat.name()));
+                    String mode = options.get("mode", "encrypt");
+                    if (!mode.equals("encrypt") && !mode.equals("decrypt")) {
+                        System.out.println("Unknown batch mode: " + mode);
+                        System.out.println("Usage: batch [--mode encrypt|decrypt] [--in file] [--out file]"
+                                + " [--format hex|bin|raw] [--out-format hex|bin|raw] [--engine name]");
+                        return 2;
+                    }
+                    boolean decrypt = mode.equals("decrypt");
+                    try (BlockReader in = new BlockReader(openInput(options.get("in", "-")), inFormat);
+                            BlockWriter out = new BlockWriter(openOutput(options.get("out", "-")), outFormat)) {
+                        batch(Engine.of(options.get("engine", "reference")).create(), decrypt, in, out);
+                    }
+                    return 0;
+                }
+                case "bench":
+                    new ThroughputBench(Options.parse(args, 1)).run(System.out);
+                    return 0;
+                case "verify":
+                    return new DifferentialVerifier(Options.parse(args, 1)).run(System.out) ? 0 : 1;
+                case "check-allocation":
+                    return new AllocationCheck().run(System.out) ? 0 : 1;
+                case "check-report":
+                    return new ReportCheck().run(System.out) ? 0 : 1;
+                case "convert": {
+                    Options options = Options.parse(args, 1);
+                    ReportFormat format = ReportFormat.of(options.get("format", "csv"));
+                    try (BinaryReportReader in = new BinaryReportReader(new FileInputStream(options.require("in")));
+                            ReportSink out = format.open(new File(options.require("out")))) {
+                        in.copyTo(out);
+                    }
+                    return 0;
+                }
+                case "worker":
+                    coordinator.worker(Options.parse(args, 1));
+                    return 0;
+                case "campaign":
+                    coordinator.campaign(Options.parse(args, 1));
+                    return 0;
+                case "merge": {
+                    if (args.length < 3 || !args[1].equals("--out")) {
+                        System.out.println("Usage: merge --out file acc1 acc2 ...");
+                        return 2;
+                    }
+                    List<File> inputs = new ArrayList<>();
+                    for (int i = 3; i < args.length; i++) inputs.add(new File(args[i]));
+                    coordinator.merge(new File(args[2]), inputs);
+                    return 0;
+                }
+                default:
+                    System.out.println("Unknown mode: " + args[0]);
+                    System.out.println("Modes: encrypt, decrypt, batch, bench, verify, check-allocation, check-report, convert, worker, campaign, merge");
+                    return 2;
+            }
+        } catch (Exception ex) {
+            Logger.getLogger(Application.class.getName()).log(Level.SEVERE, null, ex);
+            return 1;
+        }
+    }
+    
+    /**
+     * Read the two lines of an input file (plaintext or ciphertext, and key).
+     * @param file input file
+     * @return both lines
+     * @throws FileNotFoundException if the file does not exist
+     */
+    private static String[] readPair(String file) throws FileNotFoundException {
+        try (Scanner scanner = new Scanner(new File(file))) {
+            scanner.useDelimiter(System.getProperty("line.separator"));
+            return new String[] {scanner.next(), scanner.next()};
+        }
+    }
+    
+    /**
+     * En/decrypt all records of a batch input.
+     * Usage: batch [--mode encrypt|decrypt] [--in file] [--out file]
+     *        [--format hex|bin|raw] [--out-format hex|bin|raw] [--engine name]
+     * Input and output default to stdin and stdout ("-").
+     * @param engine block engine
+     * @param decrypt decrypt if true, encrypt otherwise
+     * @param in record reader
+     * @param out block writer
+     * @return number of records
+     * @throws IOException if reading or writing fails
+     */
+    static long batch(BlockEngine engine, boolean decrypt, BlockReader in, BlockWriter out) throws IOException {
+        byte[] blocks = new byte[16*BATCH_SIZE];
+        byte[] keys = new byte[16*BATCH_SIZE];
+        long result = 0;
+        int count;
+        while ((count = in.read(blocks, keys, BATCH_SIZE)) > 0) {
+            if (decrypt) engine.decryptBlocks(blocks, keys, count);
+            else engine.encryptBlocks(blocks, keys, count);
+            out.write(blocks, count);
+            result += count;
+        }
+        return result;
+    }
+    
+    /**
+     * Open an input file, "-" for stdin.
+     * @param file file name
+     * @return input stream
+     * @throws FileNotFoundException if the file does not exist
+     */
+    private static InputStream openInput(String file) throws FileNotFoundException {
+        return file.equals("-") ? System.in : new FileInputStream(file);
+    }
+    
+    /**
+     * Open an output file, "-" for stdout.
+     * @param file file name
+     * @return output stream
+     * @throws FileNotFoundException if the file cannot be created
+     */
+    private static OutputStream openOutput(String file) throws FileNotFoundException {
+        return file.equals("-") ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(file);
     }
+}
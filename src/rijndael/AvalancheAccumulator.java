@@ -0,0 +1,179 @@
+package rijndael;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Mergeable result of an avalanche analysis.
+ * Keeps exact sums of hamming distances per experiment, variant and round,
+ * so that partial results of several shards can be combined without loss.
+ */
+public class AvalancheAccumulator {
+
+    /* CONSTANTS */
+
+    static final int EXPERIMENTS = 2; // P_i under K, P under K_i
+    static final int VARIANTS = 5; // AES0,…,AES4
+    static final int ROUNDS = 11; // Round 0 to 10
+    static final int BITS = 128; // Altered bit positions
+
+    static final int EXPERIMENT_PLAINTEXT = 0; // P under K and P_i under K
+    static final int EXPERIMENT_KEY = 1; // P under K and P under K_i
+
+    private static final int MAGIC = 0x41564c31; // "AVL1"
+
+    /* STATE */
+
+    private final long[] sums = new long[EXPERIMENTS*VARIANTS*ROUNDS];
+    private final long[] samples = new long[EXPERIMENTS*VARIANTS];
+
+    /**
+     * Add the hamming distance of one sample in one round.
+     * @param experiment experiment index
+     * @param variant algorithm type (AES0, AES1,…)
+     * @param round round 0 to 10
+     * @param distance hamming distance
+     */
+    void add(int experiment, int variant, int round, int distance) {
+        sums[(experiment*VARIANTS+variant)*ROUNDS+round] += distance;
+    }
+
+    /**
+     * Count one completed sample, i.e., one altered bit position.
+     * @param experiment experiment index
+     * @param variant algorithm type (AES0, AES1,…)
+     */
+    void count(int experiment, int variant) {
+        samples[experiment*VARIANTS+variant]++;
+    }
+
+    /**
+     * Sum of hamming distances.
+     * @param experiment experiment index
+     * @param variant algorithm type
+     * @param round round
+     * @return sum
+     */
+    public long sum(int experiment, int variant, int round) {
+        return sums[(experiment*VARIANTS+variant)*ROUNDS+round];
+    }
+
+    /**
+     * Number of samples.
+     * @param experiment experiment index
+     * @param variant algorithm type
+     * @return number of samples
+     */
+    public long samples(int experiment, int variant) {
+        return samples[experiment*VARIANTS+variant];
+    }
+
+    /**
+     * Average hamming distance, rounded to integers as in the assignment.
+     * @param experiment experiment index
+     * @param variant algorithm type
+     * @param round round
+     * @return average
+     */
+    public int average(int experiment, int variant, int round) {
+        long n = samples(experiment, variant);
+        if (n == 0) return 0;
+        return (int)Math.round((sum(experiment, variant, round)*1.0d)/n);
+    }
+
+    /**
+     * Add the results of another accumulator to this one.
+     * Merging is exact and independent of order.
+     * @param other other accumulator
+     * @return this accumulator
+     */
+    public AvalancheAccumulator merge(AvalancheAccumulator other) {
+        for (int i = 0; i < sums.length; i++) sums[i] += other.sums[i];
+        for (int i = 0; i < samples.length; i++) samples[i] += other.samples[i];
+        return this;
+    }
+
+    /**
+     * Print the table of average distances of one experiment.
+     * @param out writer
+     * @param experiment experiment index
+     */
+    public void printTable(PrintWriter out, int experiment) {
+        out.println("Round\t\tAES0\t\tAES1\t\tAES2\t\tAES3\t\tAES4");
+        for (int round = 0; round < ROUNDS; round++) {
+            out.print(round);
+            out.print("\t\t");
+            for (int variant = 0; variant < VARIANTS; variant++) {
+                out.print(average(experiment, variant, round)); // Print average distance
+                out.print("\t\t");
+            }
+            out.println();
+        }
+    }
+
+    /* SERIALIZATION */
+
+    /**
+     * Write this accumulator in binary form.
+     * @param out output stream
+     * @throws IOException if writing fails
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(sums.length);
+        for (long s: sums) out.writeLong(s);
+        out.writeInt(samples.length);
+        for (long n: samples) out.writeLong(n);
+    }
+
+    /**
+     * Read an accumulator in binary form.
+     * @param in input stream
+     * @return accumulator
+     * @throws IOException if reading fails or data is malformed
+     */
+    public static AvalancheAccumulator readFrom(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) throw new IOException("Not an avalanche accumulator");
+        AvalancheAccumulator result = new AvalancheAccumulator();
+        if (in.readInt() != result.sums.length) throw new IOException("Unexpected accumulator dimensions");
+        for (int i = 0; i < result.sums.length; i++) result.sums[i] = in.readLong();
+        if (in.readInt() != result.samples.length) throw new IOException("Unexpected accumulator dimensions");
+        for (int i = 0; i < result.samples.length; i++) result.samples[i] = in.readLong();
+        return result;
+    }
+
+    /**
+     * Save this accumulator to a file.
+     * Data is written to a temporary file first and then renamed, so that an
+     * interrupted worker never leaves a partial result behind.
+     * @param file target file
+     * @throws IOException if writing fails
+     */
+    public void save(File file) throws IOException {
+        File temp = new File(file.getPath() + ".part");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            writeTo(out);
+        }
+        if (file.exists() && !file.delete()) throw new IOException("Cannot replace " + file);
+        if (!temp.renameTo(file)) throw new IOException("Cannot rename " + temp + " to " + file);
+    }
+
+    /**
+     * Load an accumulator from a file.
+     * @param file source file
+     * @return accumulator
+     * @throws IOException if reading fails
+     */
+    public static AvalancheAccumulator load(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            return readFrom(in);
+        }
+    }
+}
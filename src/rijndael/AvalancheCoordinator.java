@@ -0,0 +1,194 @@
+package rijndael;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local coordinator for sharded avalanche campaigns.
+ * Splits a campaign into shards, runs every shard in a separate worker
+ * process, re-runs failed shards and merges the accumulators.
+ */
+public class AvalancheCoordinator {
+
+    private static final Logger LOG = Logger.getLogger(AvalancheCoordinator.class.getName());
+
+    private final Rijndael rj = new Rijndael();
+
+    /**
+     * Worker mode: run one shard and save its accumulator.
+     * Options: shard options (see AvalancheShard.fromOptions), --out file
+     * and optionally --samples file --format csv|json|binary for every sample.
+     * @param options options
+     * @throws IOException if the result cannot be written
+     */
+    public void worker(Options options) throws IOException {
+        AvalancheShard shard = AvalancheShard.fromOptions(rj, options);
+        AvalancheAccumulator result;
+        if (options.has("samples")) {
+            ReportFormat format = ReportFormat.of(options.get("format", "csv"));
+            try (ReportSink samples = format.open(new File(options.get("samples", null)))) {
+                result = shard.run(rj, samples);
+            }
+        } else {
+            result = shard.run(rj);
+        }
+        result.save(new File(options.require("out")));
+    }
+
+    /**
+     * Campaign mode: launch all shards and merge their results.
+     * Options:
+     * --plaintext/--key or --seeds from:to  samples to analyse
+     * --shards n          number of shards (default: number of processors)
+     * --partition p       "seed" or "cell" (default: seed if seeded)
+     * --parallel n        concurrently running workers (default: shards)
+     * --nodes n           number of NUMA nodes or containers (default 1)
+     * --launcher cmd      command prefix for workers, {node} and {shard} are
+     *                     replaced, e.g. "numactl --cpunodebind={node} --membind={node}"
+     * --retries n         attempts per shard after the first (default 2)
+     * --work-dir dir      directory for shard results (default "shards")
+     * --out file          merged accumulator (default "avalanche.acc")
+     * --report file       averages in text form (default "output_avalanche.txt")
+     * --samples-format f  also let every worker write its samples in format f
+     * @param options options
+     * @throws IOException if a shard fails permanently
+     * @throws InterruptedException if interrupted while waiting for workers
+     */
+    public void campaign(Options options) throws IOException, InterruptedException {
+        AvalancheShard whole = AvalancheShard.fromOptions(rj, options);
+        int shardCount = options.getInt("shards", Runtime.getRuntime().availableProcessors());
+        boolean bySeed = options.get("partition", options.has("plaintext") ? "cell" : "seed").equals("seed");
+        final int nodes = options.getInt("nodes", 1);
+        final String launcher = options.get("launcher", "");
+        final int retries = options.getInt("retries", 2);
+        int parallel = options.getInt("parallel", shardCount);
+        if (shardCount < 1 || nodes < 1 || parallel < 1 || retries < 0)
+            throw new IllegalArgumentException("Shards, nodes and parallel must be positive, retries not negative");
+        if (shardCount > whole.size(bySeed))
+            throw new IllegalArgumentException(shardCount + " shards for " + whole.size(bySeed) + (bySeed ? " seeds" : " cells"));
+        final List<AvalancheShard> shards = whole.split(shardCount, bySeed);
+        final File workDir = new File(options.get("work-dir", "shards"));
+        final ReportFormat samples = options.has("samples-format") ? ReportFormat.of(options.get("samples-format", null)) : null;
+        if (!workDir.isDirectory() && !workDir.mkdirs()) throw new IOException("Cannot create " + workDir);
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallel);
+        List<Future<File>> results = new ArrayList<>();
+        for (int i = 0; i < shards.size(); i++) {
+            final int index = i;
+            results.add(pool.submit(() -> runShard(shards.get(index), index, index % nodes, launcher, retries, workDir, samples)));
+        }
+        pool.shutdown();
+
+        // Merge in shard order; merging is exact, so order does not matter
+        AvalancheAccumulator merged = new AvalancheAccumulator();
+        try {
+            for (Future<File> result: results) merged.merge(AvalancheAccumulator.load(result.get()));
+        } catch (ExecutionException ex) {
+            pool.shutdownNow();
+            throw new IOException(ex.getCause().getMessage(), ex.getCause());
+        }
+        merged.save(new File(options.get("out", "avalanche.acc")));
+
+        try (PrintWriter out = new PrintWriter(options.get("report", "output_avalanche.txt"))) {
+            out.println("AVALANCHE (" + whole + ", " + shards.size() + " shards)");
+            out.println("P under K and P_i under K");
+            merged.printTable(out, AvalancheAccumulator.EXPERIMENT_PLAINTEXT);
+            out.println("P under K and P under K_i");
+            merged.printTable(out, AvalancheAccumulator.EXPERIMENT_KEY);
+        }
+    }
+
+    /**
+     * Merge mode: combine saved accumulators.
+     * Usage: merge --out file acc1 acc2 …
+     * @param out merged accumulator file
+     * @param inputs accumulator files
+     * @throws IOException if reading or writing fails
+     */
+    public void merge(File out, List<File> inputs) throws IOException {
+        AvalancheAccumulator merged = new AvalancheAccumulator();
+        for (File input: inputs) merged.merge(AvalancheAccumulator.load(input));
+        merged.save(out);
+    }
+
+    /**
+     * Run one shard in a worker process, retrying on failure.
+     * @param shard shard
+     * @param index shard index
+     * @param node node the worker is bound to
+     * @param launcher command prefix
+     * @param retries attempts after the first
+     * @param workDir directory for results
+     * @param samples format of sample reports, null for none
+     * @return accumulator file
+     * @throws IOException if all attempts fail
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private File runShard(AvalancheShard shard, int index, int node, String launcher, int retries, File workDir,
+            ReportFormat samples) throws IOException, InterruptedException {
+        File out = new File(workDir, "shard-" + index + ".acc");
+        File log = new File(workDir, "shard-" + index + ".log");
+        for (int attempt = 0; attempt <= retries; attempt++) {
+            if (out.exists() && !out.delete()) throw new IOException("Cannot delete stale " + out);
+            List<String> command = command(shard, index, node, launcher, out);
+            if (samples != null) {
+                command.add("--samples");
+                command.add(new File(workDir, "shard-" + index + "." + samples.extension()).getPath());
+                command.add("--format");
+                command.add(samples.name());
+            }
+            ProcessBuilder pb = new ProcessBuilder(command);
+            pb.redirectErrorStream(true);
+            pb.redirectOutput(ProcessBuilder.Redirect.appendTo(log));
+            Process process = pb.start();
+            int exit;
+            try {
+                exit = process.waitFor();
+            } catch (InterruptedException ex) {
+                // Campaign failed or was cancelled: do not leave the worker running
+                process.destroyForcibly();
+                Thread.currentThread().interrupt();
+                throw ex;
+            }
+            if (exit == 0 && out.isFile()) return out;
+            LOG.log(Level.WARNING, "Shard {0} ({1}) failed with exit code {2}, attempt {3}",
+                    new Object[] {index, shard, exit, attempt+1});
+        }
+        throw new IOException("Shard " + index + " (" + shard + ") failed " + (retries+1) + " times, see " + log);
+    }
+
+    /**
+     * Build the worker command line.
+     * @param shard shard
+     * @param index shard index
+     * @param node node the worker is bound to
+     * @param launcher command prefix
+     * @param out accumulator file
+     * @return command
+     */
+    private List<String> command(AvalancheShard shard, int index, int node, String launcher, File out) {
+        List<String> result = new ArrayList<>();
+        for (String token: launcher.trim().split("\\s+")) {
+            if (!token.isEmpty())
+                result.add(token.replace("{node}", Integer.toString(node)).replace("{shard}", Integer.toString(index)));
+        }
+        result.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        result.add("-cp");
+        result.add(System.getProperty("java.class.path"));
+        result.add(Application.class.getName());
+        result.add("worker");
+        result.addAll(shard.toArguments(rj));
+        result.add("--out");
+        result.add(out.getPath());
+        return result;
+    }
+}
@@ -0,0 +1,23 @@
+package rijndael;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the avalanche analysis of one plaintext and key, i.e., all
+ * rounds of all cells of a shard.
+ */
+@Name("rijndael.Avalanche")
+@Label("Avalanche")
+@Category("Rijndael")
+@Description("Avalanche analysis of one plaintext and key over the cells of a shard")
+class AvalancheEvent extends jdk.jfr.Event {
+
+    @Label("Sample")
+    long sample;
+
+    @Label("Cells")
+    int cells;
+}
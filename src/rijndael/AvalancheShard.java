@@ -0,0 +1,265 @@
+package rijndael;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic part of an avalanche campaign.
+ * A shard covers a range of RNG seeds (each seed yields one random plaintext
+ * and key) or a single fixed plaintext and key, and a range of cells, where
+ * cell = variant*128 + bit. Running the same shard always yields the same
+ * accumulator, so failed shards can simply be run again.
+ */
+public class AvalancheShard {
+
+    static final int CELLS = AvalancheAccumulator.VARIANTS*AvalancheAccumulator.BITS;
+
+    private final byte[] plaintext; // Fixed plaintext, null if seeded
+    private final byte[] key; // Fixed key, null if seeded
+    private final long seedFrom, seedTo;
+    private final int cellFrom, cellTo;
+
+    private AvalancheShard(byte[] plaintext, byte[] key, long seedFrom, long seedTo, int cellFrom, int cellTo) {
+        if (cellFrom < 0 || cellTo > CELLS || cellFrom > cellTo)
+            throw new IllegalArgumentException("Invalid cell range " + cellFrom + ":" + cellTo);
+        this.plaintext = plaintext;
+        this.key = key;
+        this.seedFrom = seedFrom;
+        this.seedTo = seedTo;
+        this.cellFrom = cellFrom;
+        this.cellTo = cellTo;
+    }
+
+    /**
+     * Shard analysing a fixed plaintext and key.
+     * @param plaintext plaintext state
+     * @param key key state
+     * @param cellFrom first cell
+     * @param cellTo last cell (exclusive)
+     * @return shard
+     */
+    public static AvalancheShard fixed(byte[] plaintext, byte[] key, int cellFrom, int cellTo) {
+        return new AvalancheShard(plaintext.clone(), key.clone(), 0, 1, cellFrom, cellTo);
+    }
+
+    /**
+     * Shard analysing random plaintexts and keys.
+     * @param seedFrom first seed
+     * @param seedTo last seed (exclusive)
+     * @param cellFrom first cell
+     * @param cellTo last cell (exclusive)
+     * @return shard
+     */
+    public static AvalancheShard seeded(long seedFrom, long seedTo, int cellFrom, int cellTo) {
+        return new AvalancheShard(null, null, seedFrom, seedTo, cellFrom, cellTo);
+    }
+
+    /**
+     * Read a shard from command line options.
+     * Either --plaintext and --key or --seeds from:to, optionally --cells from:to.
+     * @param rj Rijndael instance used for conversion
+     * @param options options
+     * @return shard
+     */
+    public static AvalancheShard fromOptions(Rijndael rj, Options options) {
+        long[] cells = options.getRange("cells", 0, CELLS);
+        if (options.has("plaintext"))
+            return fixed(rj.convertFromString(options.require("plaintext")),
+                    rj.convertFromString(options.require("key")), (int)cells[0], (int)cells[1]);
+        long[] seeds = options.getRange("seeds", 0, 1);
+        return seeded(seeds[0], seeds[1], (int)cells[0], (int)cells[1]);
+    }
+
+    /**
+     * Command line options describing this shard.
+     * @param rj Rijndael instance used for conversion
+     * @return options as accepted by fromOptions
+     */
+    public List<String> toArguments(Rijndael rj) {
+        List<String> result = new ArrayList<>();
+        if (plaintext != null) {
+            result.add("--plaintext");
+            result.add(rj.convertToString(plaintext));
+            result.add("--key");
+            result.add(rj.convertToString(key));
+        } else {
+            result.add("--seeds");
+            result.add(seedFrom + ":" + seedTo);
+        }
+        result.add("--cells");
+        result.add(cellFrom + ":" + cellTo);
+        return result;
+    }
+
+    /**
+     * Number of seeds or cells covered by this shard.
+     * @param bySeed count seeds if true, cells otherwise
+     * @return length of the range
+     */
+    public long size(boolean bySeed) {
+        return bySeed ? seedTo - seedFrom : cellTo - cellFrom;
+    }
+
+    /**
+     * Split this shard into contiguous parts.
+     * @param parts number of parts
+     * @param bySeed split the seed range if true, the cell range otherwise
+     * @return list of non-empty shards
+     */
+    public List<AvalancheShard> split(int parts, boolean bySeed) {
+        List<AvalancheShard> result = new ArrayList<>();
+        long from = bySeed ? seedFrom : cellFrom;
+        long length = (bySeed ? seedTo : cellTo) - from;
+        for (int i = 0; i < parts; i++) {
+            long a = from + length*i/parts;
+            long b = from + length*(i+1)/parts;
+            if (a == b) continue;
+            if (bySeed) result.add(new AvalancheShard(plaintext, key, a, b, cellFrom, cellTo));
+            else result.add(new AvalancheShard(plaintext, key, seedFrom, seedTo, (int)a, (int)b));
+        }
+        return result;
+    }
+
+    /**
+     * Run the avalanche analysis of this shard.
+     * @param rj Rijndael instance
+     * @return accumulated hamming distances
+     */
+    public AvalancheAccumulator run(Rijndael rj) {
+        try {
+            return run(rj, null);
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex); // Cannot happen without sink
+        }
+    }
+
+    /**
+     * Run the avalanche analysis of this shard and report every sample.
+     * @param rj Rijndael instance
+     * @param samples sink for sample rows, may be null
+     * @return accumulated hamming distances
+     * @throws IOException if writing to the sink fails
+     */
+    public AvalancheAccumulator run(Rijndael rj, ReportSink samples) throws IOException {
+        AvalancheAccumulator result = new AvalancheAccumulator();
+        if (plaintext != null) {
+            analyse(rj, 0, plaintext, key, result, samples);
+        } else {
+            byte[] p = new byte[16];
+            byte[] k = new byte[16];
+            for (long seed = seedFrom; seed < seedTo; seed++) {
+                // One plaintext and key per seed, mixed so that neighbouring seeds are unrelated
+                SplittableRandom random = new SplittableRandom(DifferentialVerifier.chunkSeed(0, seed));
+                DifferentialVerifier.fill(random, p, p.length);
+                DifferentialVerifier.fill(random, k, k.length);
+                analyse(rj, seed, p, k, result, samples);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Analyse the cells of this shard for one plaintext and key.
+     * @param rj Rijndael instance
+     * @param sample sample id
+     * @param p plaintext state
+     * @param k key state
+     * @param acc accumulator
+     * @param samples sink for sample rows, may be null
+     * @throws IOException if writing to the sink fails
+     */
+    private void analyse(Rijndael rj, long sample, byte[] p, byte[] k, AvalancheAccumulator acc, ReportSink samples)
+            throws IOException {
+        AvalancheEvent event = CipherMetrics.ENABLED ? new AvalancheEvent() : null;
+        if (event != null) event.begin();
+        byte[][] reference = null; // P under K after each round
+        int referenceVariant = -1;
+        byte[] rk = new byte[BlockCodec.BLOCK]; // Round key, derived on the fly
+        for (int cell = cellFrom; cell < cellTo; cell++) {
+            int variant = cell / AvalancheAccumulator.BITS;
+            int bit = cell % AvalancheAccumulator.BITS;
+            if (variant != referenceVariant) {
+                reference = trace(rj, p, k, variant);
+                referenceVariant = variant;
+            }
+
+            // 1. P under K and P_i under K
+            int experiment = AvalancheAccumulator.EXPERIMENT_PLAINTEXT;
+            byte[] state = rj.alteredState(p.clone(), bit);
+            record(acc, samples, sample, experiment, variant, bit, 0, rj.hammingDist(reference[0], state));
+            state = rj.addRoundKey(state, k);
+            System.arraycopy(k, 0, rk, 0, BlockCodec.BLOCK);
+            for (int round = 1; round < AvalancheAccumulator.ROUNDS; round++) {
+                FastCore.nextRoundKey(rk, 0, round);
+                state = rj.roundWithKey(state, rk, round, variant);
+                record(acc, samples, sample, experiment, variant, bit, round, rj.hammingDist(reference[round], state));
+            }
+            acc.count(experiment, variant);
+
+            // 2. P under K and P under K_i
+            experiment = AvalancheAccumulator.EXPERIMENT_KEY;
+            byte[] ki = rj.alteredState(k.clone(), bit);
+            state = p.clone();
+            record(acc, samples, sample, experiment, variant, bit, 0, rj.hammingDist(reference[0], state));
+            state = rj.addRoundKey(state, ki);
+            for (int round = 1; round < AvalancheAccumulator.ROUNDS; round++) {
+                FastCore.nextRoundKey(ki, 0, round); // ki becomes round key round
+                state = rj.roundWithKey(state, ki, round, variant);
+                record(acc, samples, sample, experiment, variant, bit, round, rj.hammingDist(reference[round], state));
+            }
+            acc.count(experiment, variant);
+        }
+        if (event != null) event.end();
+        if (event != null && event.shouldCommit()) {
+            event.sample = sample;
+            event.cells = cellTo - cellFrom;
+            event.commit();
+        }
+    }
+
+    /**
+     * Add a distance to the accumulator and report it.
+     * @param acc accumulator
+     * @param samples sink for sample rows, may be null
+     * @param sample sample id
+     * @param experiment experiment index
+     * @param variant algorithm type
+     * @param bit altered bit position
+     * @param round round
+     * @param distance hamming distance
+     * @throws IOException if writing to the sink fails
+     */
+    private static void record(AvalancheAccumulator acc, ReportSink samples, long sample,
+            int experiment, int variant, int bit, int round, int distance) throws IOException {
+        acc.add(experiment, variant, round, distance);
+        if (samples != null) samples.sample(sample, experiment, variant, bit, round, distance);
+    }
+
+    /**
+     * States of P under K after each round of a variant.
+     * @param rj Rijndael instance
+     * @param p plaintext state
+     * @param k key state
+     * @param variant algorithm type
+     * @return states of round 0 to 10
+     */
+    private byte[][] trace(Rijndael rj, byte[] p, byte[] k, int variant) {
+        byte[][] result = new byte[AvalancheAccumulator.ROUNDS][];
+        result[0] = p.clone();
+        byte[] state = rj.addRoundKey(p, k);
+        byte[] rk = k.clone(); // Round key, derived on the fly
+        for (int round = 1; round < AvalancheAccumulator.ROUNDS; round++) {
+            FastCore.nextRoundKey(rk, 0, round);
+            state = rj.roundWithKey(state, rk, round, variant);
+            result[round] = state;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (plaintext != null ? "fixed" : "seeds " + seedFrom + ":" + seedTo) + ", cells " + cellFrom + ":" + cellTo;
+    }
+}
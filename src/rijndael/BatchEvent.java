@@ -0,0 +1,42 @@
+package rijndael;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for the en/decryption of a batch of blocks.
+ */
+@Name("rijndael.Batch")
+@Label("Batch")
+@Category("Rijndael")
+@Description("En/decryption of a batch of blocks by a block engine")
+class BatchEvent extends jdk.jfr.Event {
+
+    @Label("Engine")
+    String engine;
+
+    @Label("Decrypt")
+    boolean decrypt;
+
+    @Label("Blocks")
+    int blocks;
+
+    /**
+     * End and commit a started event.
+     * @param event started event
+     * @param engine engine
+     * @param decrypt decryption if true
+     * @param count number of blocks
+     */
+    static void commit(BatchEvent event, Engine engine, boolean decrypt, int count) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.engine = engine.name();
+            event.decrypt = decrypt;
+            event.blocks = count;
+            event.commit();
+        }
+    }
+}
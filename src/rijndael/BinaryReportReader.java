@@ -0,0 +1,87 @@
+package rijndael;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reader of the binary report format written by BinaryReportSink.
+ * Replays the records into any report sink, e.g. to convert a binary
+ * report to CSV. Malformed input (wrong magic, unknown record, chunk size
+ * out of range, missing end record or data after it) is rejected.
+ */
+public class BinaryReportReader implements Closeable {
+
+    private final DataInputStream in;
+
+    // Columns of the current chunk
+    private final long[] sample = new long[BinaryReportSink.CHUNK_ROWS];
+    private final byte[] experiment = new byte[BinaryReportSink.CHUNK_ROWS];
+    private final byte[] variant = new byte[BinaryReportSink.CHUNK_ROWS];
+    private final byte[] bit = new byte[BinaryReportSink.CHUNK_ROWS];
+    private final byte[] round = new byte[BinaryReportSink.CHUNK_ROWS];
+    private final short[] distance = new short[BinaryReportSink.CHUNK_ROWS];
+
+    /**
+     * Create a new reader and check the header.
+     * @param in input stream, closed with the reader
+     * @throws IOException if the header is missing or wrong
+     */
+    public BinaryReportReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (this.in.readInt() != BinaryReportSink.MAGIC) throw new IOException("Not a binary avalanche report");
+    }
+
+    /**
+     * Replay all records up to the end record.
+     * @param sink destination, not closed
+     * @throws IOException if reading or writing fails or the input is malformed
+     */
+    public void copyTo(ReportSink sink) throws IOException {
+        while (true) {
+            int tag = in.read();
+            switch (tag) {
+                case 'M':
+                    sink.meta(in.readUTF(), in.readUTF());
+                    break;
+                case 'C':
+                    copyChunk(sink);
+                    break;
+                case 'E':
+                    if (in.read() != -1) throw new IOException("Data after the end of the report");
+                    return;
+                case -1:
+                    throw new EOFException("Report ends without end record");
+                default:
+                    throw new IOException("Unknown record tag " + tag);
+            }
+        }
+    }
+
+    /**
+     * Read one chunk and replay its rows.
+     * @param sink destination
+     * @throws IOException if reading or writing fails or the chunk is malformed
+     */
+    private void copyChunk(ReportSink sink) throws IOException {
+        int rows = in.readInt();
+        if (rows < 1 || rows > BinaryReportSink.CHUNK_ROWS) throw new IOException("Invalid chunk size " + rows);
+        for (int i = 0; i < rows; i++) sample[i] = in.readLong();
+        in.readFully(experiment, 0, rows);
+        in.readFully(variant, 0, rows);
+        in.readFully(bit, 0, rows);
+        in.readFully(round, 0, rows);
+        for (int i = 0; i < rows; i++) distance[i] = in.readShort();
+        for (int i = 0; i < rows; i++) {
+            sink.sample(sample[i], experiment[i], variant[i], bit[i], round[i], distance[i]);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
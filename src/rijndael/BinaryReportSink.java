@@ -0,0 +1,91 @@
+package rijndael;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Report sink writing a compact binary columnar format.
+ * Layout (big endian, as written by DataOutputStream):
+ * - int magic "AVR1"
+ * - records, each starting with a tag byte:
+ *   'M' metadata: UTF name, UTF value
+ *   'C' chunk: int n, n longs sample, then n bytes each of experiment,
+ *       variant, bit and round, then n shorts distance (0 to 128, which
+ *       does not fit a signed byte)
+ *   'E' end of report
+ * Rows are collected column by column and written in chunks.
+ */
+public class BinaryReportSink implements ReportSink {
+
+    static final int MAGIC = 0x41565231; // "AVR1"
+    static final int CHUNK_ROWS = 1 << 16;
+
+    private final DataOutputStream out;
+
+    // Columns of the current chunk
+    private final long[] sample = new long[CHUNK_ROWS];
+    private final byte[] experiment = new byte[CHUNK_ROWS];
+    private final byte[] variant = new byte[CHUNK_ROWS];
+    private final byte[] bit = new byte[CHUNK_ROWS];
+    private final byte[] round = new byte[CHUNK_ROWS];
+    private final short[] distance = new short[CHUNK_ROWS];
+    private int rows = 0;
+
+    /**
+     * Create a new binary sink.
+     * @param out output stream, closed with the sink
+     * @throws IOException if the header cannot be written
+     */
+    public BinaryReportSink(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        this.out.writeInt(MAGIC);
+    }
+
+    @Override
+    public void meta(String name, String value) throws IOException {
+        flushChunk(); // Keep records in order
+        out.writeByte('M');
+        out.writeUTF(name);
+        out.writeUTF(value);
+    }
+
+    @Override
+    public void sample(long sample, int experiment, int variant, int bit, int round, int distance) throws IOException {
+        this.sample[rows] = sample;
+        this.experiment[rows] = (byte)experiment;
+        this.variant[rows] = (byte)variant;
+        this.bit[rows] = (byte)bit;
+        this.round[rows] = (byte)round;
+        this.distance[rows] = (short)distance;
+        if (++rows == CHUNK_ROWS) flushChunk();
+    }
+
+    /**
+     * Write the collected rows as one chunk.
+     * @throws IOException if writing fails
+     */
+    private void flushChunk() throws IOException {
+        if (rows == 0) return;
+        out.writeByte('C');
+        out.writeInt(rows);
+        for (int i = 0; i < rows; i++) out.writeLong(sample[i]);
+        out.write(experiment, 0, rows);
+        out.write(variant, 0, rows);
+        out.write(bit, 0, rows);
+        out.write(round, 0, rows);
+        for (int i = 0; i < rows; i++) out.writeShort(distance[i]);
+        rows = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushChunk();
+            out.writeByte('E');
+        } finally {
+            out.close();
+        }
+    }
+}
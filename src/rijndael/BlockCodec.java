@@ -0,0 +1,134 @@
+package rijndael;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Table driven conversion between 16 byte blocks and their text forms.
+ * All methods work on caller provided buffers and allocate nothing, except
+ * for the exception thrown on malformed input.
+ */
+public final class BlockCodec {
+
+    static final int BLOCK = 16; // Bytes per block
+    static final int HEX_CHARS = 2*BLOCK; // Characters per hex block
+    static final int BINARY_CHARS = 8*BLOCK; // Characters per binary block
+
+    private static final byte[] HEX_DIGITS = {
+        '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'
+    };
+
+    // Value of each ASCII character as hex digit, -1 if invalid
+    private static final byte[] HEX_VALUES = new byte[256];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte)-1);
+        for (int i = 0; i < 10; i++) HEX_VALUES['0'+i] = (byte)i;
+        for (int i = 0; i < 6; i++) {
+            HEX_VALUES['a'+i] = (byte)(10+i);
+            HEX_VALUES['A'+i] = (byte)(10+i);
+        }
+    }
+
+    private BlockCodec() {
+    }
+
+    /**
+     * Decode 32 ASCII hex digits to a block.
+     * @param src source buffer
+     * @param off offset of first digit
+     * @param dst destination buffer
+     * @param dstOff offset of the block
+     */
+    public static void decodeHex(byte[] src, int off, byte[] dst, int dstOff) {
+        for (int i = 0; i < BLOCK; i++) {
+            int hi = HEX_VALUES[src[off+2*i] & 0xff];
+            int lo = HEX_VALUES[src[off+2*i+1] & 0xff];
+            if ((hi | lo) < 0) throw malformed(src, off, HEX_CHARS);
+            dst[dstOff+i] = (byte)(hi << 4 | lo);
+        }
+    }
+
+    /**
+     * Decode 128 ASCII '0' and '1' to a block.
+     * @param src source buffer
+     * @param off offset of first digit
+     * @param dst destination buffer
+     * @param dstOff offset of the block
+     */
+    public static void decodeBinary(byte[] src, int off, byte[] dst, int dstOff) {
+        for (int i = 0; i < BLOCK; i++) {
+            int value = 0;
+            for (int j = 0; j < 8; j++) {
+                int bit = src[off+8*i+j] - '0';
+                if ((bit & ~1) != 0) throw malformed(src, off, BINARY_CHARS);
+                value = value << 1 | bit;
+            }
+            dst[dstOff+i] = (byte)value;
+        }
+    }
+
+    /**
+     * Decode a String of 128 '0' and '1' to a block.
+     * @param src String of 0 and 1
+     * @param dst destination buffer
+     * @param dstOff offset of the block
+     */
+    public static void decodeBinary(CharSequence src, byte[] dst, int dstOff) {
+        if (src.length() != BINARY_CHARS)
+            throw new IllegalArgumentException("Expected " + BINARY_CHARS + " binary digits, got " + src.length());
+        for (int i = 0; i < BLOCK; i++) {
+            int value = 0;
+            for (int j = 0; j < 8; j++) {
+                int bit = src.charAt(8*i+j) - '0';
+                if ((bit & ~1) != 0) throw new IllegalArgumentException("Not a binary block: " + src);
+                value = value << 1 | bit;
+            }
+            dst[dstOff+i] = (byte)value;
+        }
+    }
+
+    /**
+     * Encode a block as 32 lower case ASCII hex digits.
+     * @param src source buffer
+     * @param off offset of the block
+     * @param dst destination buffer
+     * @param dstOff offset of first digit
+     */
+    public static void encodeHex(byte[] src, int off, byte[] dst, int dstOff) {
+        for (int i = 0; i < BLOCK; i++) {
+            int b = src[off+i] & 0xff;
+            dst[dstOff+2*i] = HEX_DIGITS[b >>> 4];
+            dst[dstOff+2*i+1] = HEX_DIGITS[b & 0xf];
+        }
+    }
+
+    /**
+     * Encode a block as 128 ASCII '0' and '1'.
+     * @param src source buffer
+     * @param off offset of the block
+     * @param dst destination buffer
+     * @param dstOff offset of first digit
+     */
+    public static void encodeBinary(byte[] src, int off, byte[] dst, int dstOff) {
+        for (int i = 0; i < BLOCK; i++) {
+            int b = src[off+i] & 0xff;
+            for (int j = 0; j < 8; j++) {
+                dst[dstOff+8*i+j] = (byte)('0' + ((b >>> (7-j)) & 1));
+            }
+        }
+    }
+
+    /**
+     * Exception for malformed input.
+     * @param src source buffer
+     * @param off offset of the block
+     * @param length length of the block in characters
+     * @return exception
+     */
+    private static IllegalArgumentException malformed(byte[] src, int off, int length) {
+        int end = Math.min(src.length, off+length);
+        return new IllegalArgumentException("Malformed block: "
+                + new String(src, off, end-off, StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,25 @@
+package rijndael;
+
+/**
+ * A Rijndael implementation working on batches of blocks.
+ * Every block is en/decrypted in place under its own key. Engines are not
+ * required to be thread-safe; use one instance per thread.
+ */
+public interface BlockEngine {
+
+    /**
+     * Encrypt a batch of blocks, each under its own key.
+     * @param blocks plaintext blocks, 16 bytes each, replaced by ciphertexts
+     * @param keys encryption keys, 16 bytes each
+     * @param count number of blocks
+     */
+    void encryptBlocks(byte[] blocks, byte[] keys, int count);
+
+    /**
+     * Decrypt a batch of blocks, each under its own key.
+     * @param blocks ciphertext blocks, 16 bytes each, replaced by plaintexts
+     * @param keys decryption keys, 16 bytes each
+     * @param count number of blocks
+     */
+    void decryptBlocks(byte[] blocks, byte[] keys, int count);
+}
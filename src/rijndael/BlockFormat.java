@@ -0,0 +1,78 @@
+package rijndael;
+
+import java.util.Locale;
+
+/**
+ * Record formats of the batch mode.
+ * In text formats every input record is one line holding a block and a key
+ * separated by a space, tab or comma, and every output record is one line
+ * holding a block. In the raw format an input record is 16 block bytes
+ * followed by 16 key bytes, an output record is 16 block bytes.
+ */
+public enum BlockFormat {
+
+    HEX(BlockCodec.HEX_CHARS),
+    BIN(BlockCodec.BINARY_CHARS),
+    RAW(BlockCodec.BLOCK);
+
+    private final int width; // Encoded size of one block
+
+    BlockFormat(int width) {
+        this.width = width;
+    }
+
+    /**
+     * Encoded size of one block.
+     * @return size in bytes
+     */
+    int width() {
+        return width;
+    }
+
+    /**
+     * Is this a line oriented text format?
+     * @return true for HEX and BIN
+     */
+    boolean isText() {
+        return this != RAW;
+    }
+
+    /**
+     * Decode one block.
+     * @param src source buffer
+     * @param off offset of the encoded block
+     * @param dst destination buffer
+     * @param dstOff offset of the block
+     */
+    void decode(byte[] src, int off, byte[] dst, int dstOff) {
+        switch (this) {
+            case HEX: BlockCodec.decodeHex(src, off, dst, dstOff); break;
+            case BIN: BlockCodec.decodeBinary(src, off, dst, dstOff); break;
+            default: System.arraycopy(src, off, dst, dstOff, BlockCodec.BLOCK);
+        }
+    }
+
+    /**
+     * Encode one block.
+     * @param src source buffer
+     * @param off offset of the block
+     * @param dst destination buffer
+     * @param dstOff offset of the encoded block
+     */
+    void encode(byte[] src, int off, byte[] dst, int dstOff) {
+        switch (this) {
+            case HEX: BlockCodec.encodeHex(src, off, dst, dstOff); break;
+            case BIN: BlockCodec.encodeBinary(src, off, dst, dstOff); break;
+            default: System.arraycopy(src, off, dst, dstOff, BlockCodec.BLOCK);
+        }
+    }
+
+    /**
+     * Look up a format by name, ignoring case.
+     * @param name hex, bin or raw
+     * @return format
+     */
+    public static BlockFormat of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,111 @@
+package rijndael;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming reader for batches of (block, key) records.
+ * Records are decoded from a fixed input buffer straight into the caller's
+ * block and key buffers; reading allocates nothing.
+ */
+public class BlockReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final InputStream in;
+    private final BlockFormat format;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0; // Next unread byte
+    private int limit = 0; // End of valid data
+    private boolean eof = false;
+    private long line = 1; // Current line for error messages
+
+    /**
+     * Create a new reader.
+     * @param in input stream, closed with the reader
+     * @param format record format
+     */
+    public BlockReader(InputStream in, BlockFormat format) {
+        this.in = in;
+        this.format = format;
+    }
+
+    /**
+     * Read up to max records.
+     * @param blocks destination for blocks, 16 bytes per record
+     * @param keys destination for keys, 16 bytes per record
+     * @param max maximum number of records
+     * @return number of records read, 0 at the end of the input
+     * @throws IOException if reading fails or a record is malformed
+     */
+    public int read(byte[] blocks, byte[] keys, int max) throws IOException {
+        int width = format.width();
+        int record = format.isText() ? 2*width+1 : 2*width; // Without line break
+        int count = 0;
+        while (count < max) {
+            if (format.isText()) skipLineBreaks();
+            if (!fill(record)) break;
+            try {
+                format.decode(buffer, position, blocks, BlockCodec.BLOCK*count);
+                if (format.isText()) {
+                    byte sep = buffer[position+width];
+                    if (sep != ' ' && sep != '\t' && sep != ',')
+                        throw new IllegalArgumentException("Expected separator between block and key");
+                    format.decode(buffer, position+width+1, keys, BlockCodec.BLOCK*count);
+                } else {
+                    format.decode(buffer, position+width, keys, BlockCodec.BLOCK*count);
+                }
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Line " + line + ": " + ex.getMessage(), ex);
+            }
+            position += record;
+            count++;
+            if (format.isText()) {
+                // Expect end of line or end of input after the key
+                if (!fill(1)) break;
+                if (buffer[position] != '\n' && buffer[position] != '\r')
+                    throw new IOException("Line " + line + ": Expected end of line after key");
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Skip line breaks and blank lines.
+     * @throws IOException if reading fails
+     */
+    private void skipLineBreaks() throws IOException {
+        while (fill(1) && (buffer[position] == '\n' || buffer[position] == '\r')) {
+            if (buffer[position] == '\n') line++;
+            position++;
+        }
+    }
+
+    /**
+     * Make sure that at least n bytes are available.
+     * @param n number of bytes
+     * @return false at the end of input; with partial data this is an error
+     * @throws IOException if reading fails or the input ends within a record
+     */
+    private boolean fill(int n) throws IOException {
+        if (limit - position >= n) return true;
+        // Move remaining bytes to the front
+        System.arraycopy(buffer, position, buffer, 0, limit-position);
+        limit -= position;
+        position = 0;
+        while (!eof && limit < n) {
+            int read = in.read(buffer, limit, buffer.length-limit);
+            if (read < 0) eof = true;
+            else limit += read;
+        }
+        if (limit >= n) return true;
+        if (limit > 0 && n > 1) throw new IOException("Line " + line + ": Incomplete record at end of input");
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,64 @@
+package rijndael;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Streaming writer for batches of blocks.
+ * Blocks are encoded straight into a fixed output buffer; writing allocates
+ * nothing.
+ */
+public class BlockWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final OutputStream out;
+    private final BlockFormat format;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+
+    /**
+     * Create a new writer.
+     * @param out output stream, closed with the writer
+     * @param format record format
+     */
+    public BlockWriter(OutputStream out, BlockFormat format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    /**
+     * Write blocks.
+     * @param blocks source buffer, 16 bytes per block
+     * @param count number of blocks
+     * @throws IOException if writing fails
+     */
+    public void write(byte[] blocks, int count) throws IOException {
+        int record = format.isText() ? format.width()+1 : format.width(); // With line break
+        for (int i = 0; i < count; i++) {
+            if (position + record > BUFFER_SIZE) flush();
+            format.encode(blocks, BlockCodec.BLOCK*i, buffer, position);
+            position += format.width();
+            if (format.isText()) buffer[position++] = '\n';
+        }
+    }
+
+    /**
+     * Write buffered blocks to the underlying stream.
+     * @throws IOException if writing fails
+     */
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package rijndael;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base class for text report sinks.
+ * Formats numbers directly into a byte buffer, so that writing a row costs
+ * no String building and no allocation.
+ */
+abstract class BufferedReportSink implements ReportSink {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_ROW = 256; // Upper bound for one sample row
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20]; // Scratch for number formatting
+    private int position = 0;
+
+    BufferedReportSink(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Make sure a row of bounded length fits into the buffer.
+     * @throws IOException if flushing fails
+     */
+    final void reserve() throws IOException {
+        if (position > BUFFER_SIZE - MAX_ROW) flushBuffer();
+    }
+
+    /**
+     * Append a single ASCII character.
+     * @param c character
+     */
+    final void put(char c) {
+        buffer[position++] = (byte)c;
+    }
+
+    /**
+     * Append a constant ASCII string.
+     * Only used for short constants, longer text goes through putText.
+     * @param s string
+     */
+    final void put(String s) {
+        for (int i = 0; i < s.length(); i++) buffer[position++] = (byte)s.charAt(i);
+    }
+
+    /**
+     * Append a number in decimal notation.
+     * @param value number
+     */
+    final void put(long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) { put(Long.toString(value)); return; }
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int n = 0;
+        do { // Digits in reverse order
+            digits[n++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        while (n > 0) buffer[position++] = digits[--n];
+    }
+
+    /**
+     * Append arbitrary text in UTF-8, flushing as necessary.
+     * @param s text
+     * @throws IOException if flushing fails
+     */
+    final void putText(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (position + bytes.length > BUFFER_SIZE) flushBuffer();
+        if (bytes.length > BUFFER_SIZE) {
+            out.write(bytes);
+            return;
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    /**
+     * Write the buffer to the underlying stream.
+     * @throws IOException if writing fails
+     */
+    final void flushBuffer() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+}
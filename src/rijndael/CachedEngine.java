@@ -0,0 +1,68 @@
+package rijndael;
+
+/**
+ * Block engine for workloads with repeated keys.
+ * Key schedules come from a KeyScheduleCache, so a key is expanded only on
+ * its first use (or after eviction), and blocks are en/decrypted in place by
+ * FastCore. Decryption uses the equivalent inverse cipher, whose round keys
+ * are cached along with the encryption round keys.
+ */
+public class CachedEngine implements BlockEngine {
+
+    // Shared by all instances created through Engine.CACHED
+    static final KeyScheduleCache SHARED = new KeyScheduleCache(Integer.getInteger("rijndael.cache.size", 4096));
+
+    private final KeyScheduleCache cache;
+
+    /**
+     * Create a new engine using the shared cache.
+     * Its size is set with -Drijndael.cache.size (default 4096).
+     */
+    public CachedEngine() {
+        this(SHARED);
+    }
+
+    /**
+     * Create a new engine.
+     * @param cache key schedule cache
+     */
+    public CachedEngine(KeyScheduleCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void encryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        for (int i = 0; i < count; i++) {
+            KeySchedule schedule = cache.acquire(keys, 16*i);
+            try {
+                FastCore.encrypt(schedule.encryption(), blocks, 16*i);
+            } finally {
+                cache.release(schedule);
+            }
+        }
+        if (event != null) {
+            BatchEvent.commit(event, Engine.CACHED, false, count);
+            CipherMetrics.blocks(count);
+        }
+    }
+
+    @Override
+    public void decryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        for (int i = 0; i < count; i++) {
+            KeySchedule schedule = cache.acquire(keys, 16*i);
+            try {
+                FastCore.decrypt(schedule.decryption(), blocks, 16*i);
+            } finally {
+                cache.release(schedule);
+            }
+        }
+        if (event != null) {
+            BatchEvent.commit(event, Engine.CACHED, true, count);
+            CipherMetrics.blocks(count);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package rijndael;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.ObjectName;
+
+/**
+ * Opt-in instrumentation of the cipher hot paths.
+ * Enabled with -Drijndael.metrics=true. When enabled, counters are kept in
+ * LongAdders and exposed as MBean rijndael:type=CipherMetrics, and JFR events
+ * (category Rijndael) are emitted for recordings that enable them. When
+ * disabled, ENABLED is a constant false and the JIT removes all
+ * instrumentation code.
+ */
+public final class CipherMetrics implements CipherMetricsMBean {
+
+    static final boolean ENABLED = Boolean.getBoolean("rijndael.metrics");
+
+    static final String OBJECT_NAME = "rijndael:type=CipherMetrics";
+
+    private static final LongAdder BLOCKS = new LongAdder();
+    private static final LongAdder KEY_EXPANSIONS = new LongAdder();
+    private static final LongAdder CACHE_HITS = new LongAdder();
+    private static final LongAdder CACHE_MISSES = new LongAdder();
+
+    static {
+        if (ENABLED) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new CipherMetrics(), new ObjectName(OBJECT_NAME));
+            } catch (Exception ex) {
+                Logger.getLogger(CipherMetrics.class.getName()).log(Level.WARNING, "Cannot register " + OBJECT_NAME, ex);
+            }
+        }
+    }
+
+    private CipherMetrics() {
+    }
+
+    /**
+     * Count en/decrypted blocks. Call only if ENABLED.
+     * @param count number of blocks
+     */
+    static void blocks(int count) {
+        BLOCKS.add(count);
+    }
+
+    /**
+     * Count a key expansion. Call only if ENABLED.
+     */
+    static void keyExpansion() {
+        KEY_EXPANSIONS.increment();
+    }
+
+    /**
+     * Count a key schedule served from a cache. Call only if ENABLED.
+     */
+    static void cacheHit() {
+        CACHE_HITS.increment();
+    }
+
+    /**
+     * Count a key schedule a cache had to expand. Call only if ENABLED.
+     */
+    static void cacheMiss() {
+        CACHE_MISSES.increment();
+    }
+
+    @Override
+    public long getBlocksProcessed() {
+        return BLOCKS.sum();
+    }
+
+    @Override
+    public long getBytesProcessed() {
+        return 16*BLOCKS.sum();
+    }
+
+    @Override
+    public long getKeyExpansions() {
+        return KEY_EXPANSIONS.sum();
+    }
+
+    @Override
+    public long getKeyScheduleCacheHits() {
+        return CACHE_HITS.sum();
+    }
+
+    @Override
+    public long getKeyScheduleCacheMisses() {
+        return CACHE_MISSES.sum();
+    }
+
+    @Override
+    public void reset() {
+        BLOCKS.reset();
+        KEY_EXPANSIONS.reset();
+        CACHE_HITS.reset();
+        CACHE_MISSES.reset();
+    }
+}
@@ -0,0 +1,42 @@
+package rijndael;
+
+/**
+ * JMX view of the cipher counters, see CipherMetrics.
+ */
+public interface CipherMetricsMBean {
+
+    /**
+     * Number of en/decrypted blocks.
+     * @return count
+     */
+    long getBlocksProcessed();
+
+    /**
+     * Number of en/decrypted bytes.
+     * @return count
+     */
+    long getBytesProcessed();
+
+    /**
+     * Number of key expansions.
+     * @return count
+     */
+    long getKeyExpansions();
+
+    /**
+     * Number of key schedules served from a cache instead of expanding the key.
+     * @return count
+     */
+    long getKeyScheduleCacheHits();
+
+    /**
+     * Number of key schedules a cache had to expand.
+     * @return count
+     */
+    long getKeyScheduleCacheMisses();
+
+    /**
+     * Reset all counters to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,41 @@
+package rijndael;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Report sink writing comma separated values.
+ * Metadata is written as comment lines starting with '#'.
+ */
+public class CsvReportSink extends BufferedReportSink {
+
+    private boolean header = false; // Has the column header been written?
+
+    /**
+     * Create a new CSV sink.
+     * @param out output stream, closed with the sink
+     */
+    public CsvReportSink(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void meta(String name, String value) throws IOException {
+        putText("# " + name + ": " + value + "\n");
+    }
+
+    @Override
+    public void sample(long sample, int experiment, int variant, int bit, int round, int distance) throws IOException {
+        reserve();
+        if (!header) {
+            put("sample,experiment,variant,bit,round,distance\n");
+            header = true;
+        }
+        put(sample); put(',');
+        put(experiment); put(',');
+        put(variant); put(',');
+        put(bit); put(',');
+        put(round); put(',');
+        put(distance); put('\n');
+    }
+}
@@ -0,0 +1,515 @@
+package rijndael;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.crypto.Cipher;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Differential verification of the optimised block engines against the
+ * AES implementation of the JDK and the reference Rijndael.
+ * First every engine must reproduce the FIPS-197 known answers, alone and
+ * within a batch. Then random (key, block) vectors are generated in chunks,
+ * each chunk from its own seed derived from the run seed and the chunk
+ * number, so that any vector can be regenerated. Every vector is encrypted
+ * and decrypted by all engines, and both results are compared with the JDK
+ * (AES/ECB/NoPadding), which shares no code with FastCore and is fast
+ * enough to check every vector. The much slower reference Rijndael is
+ * compared with the JDK on every n-th vector. A mismatch is reduced by
+ * clearing bits of key and input as long as it persists, and reported in
+ * hex.
+ */
+public class DifferentialVerifier {
+
+    // FIPS-197 Appendix B and C.1: name, key, plaintext, ciphertext
+    private static final String[][] KNOWN_ANSWERS = {
+        {"FIPS-197 Appendix B", "2b7e151628aed2a6abf7158809cf4f3c",
+            "3243f6a8885a308d313198a2e0370734", "3925841d02dc09fbdc118597196a0b32"},
+        {"FIPS-197 Appendix C.1", "000102030405060708090a0b0c0d0e0f",
+            "00112233445566778899aabbccddeeff", "69c4e0d86a7b0430d8cdb78070b4c55a"}
+    };
+    private static final int KEY_POOL = 8; // Repeated keys per chunk, for cache hits
+
+    private final List<Engine> engines = new ArrayList<>();
+    private final long vectors;
+    private final int threads;
+    private final long seed;
+    private final int batchSize;
+    private final long referenceEvery;
+    private final int maxFailures;
+
+    // Shared by the worker threads
+    private final AtomicLong nextChunk = new AtomicLong();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final List<String> reports = new ArrayList<>();
+
+    /**
+     * Create a new verification run.
+     * Options:
+     * --engines a,b        engines to verify (default all but reference)
+     * --vectors n          random vectors (default 1000000)
+     * --threads n          worker threads (default number of processors)
+     * --seed s             run seed (default random, printed in the report)
+     * --batch n            vectors per chunk, engines are called with
+     *                      random batch sizes up to n (default 4096)
+     * --reference-every n  compare every n-th vector of the reference
+     *                      Rijndael with the JDK (default 256, 1 for all)
+     * --max-failures n     stop after n mismatches (default 10)
+     * @param options options
+     */
+    public DifferentialVerifier(Options options) {
+        if (options.has("engines")) {
+            for (String name: options.get("engines", null).split(",")) engines.add(Engine.of(name.trim()));
+        } else {
+            for (Engine engine: Engine.values()) {
+                if (engine != Engine.REFERENCE) engines.add(engine);
+            }
+        }
+        vectors = options.getLong("vectors", 1000000L);
+        threads = options.getInt("threads", Runtime.getRuntime().availableProcessors());
+        seed = options.has("seed") ? options.getLong("seed", 0) : new SplittableRandom().nextLong();
+        batchSize = options.getInt("batch", 4096);
+        referenceEvery = options.getLong("reference-every", 256);
+        maxFailures = options.getInt("max-failures", 10);
+        if (engines.isEmpty() || vectors < 0 || threads < 1 || batchSize < 1 || referenceEvery < 1 || maxFailures < 1)
+            throw new IllegalArgumentException("Engines, threads, batch, reference-every and max-failures must be positive");
+    }
+
+    /**
+     * Run the verification and print a report.
+     * @param out report destination
+     * @return true if no mismatch was found
+     * @throws InterruptedException if interrupted while waiting for threads
+     */
+    public boolean run(PrintStream out) throws InterruptedException {
+        out.println("VERIFICATION");
+        StringBuilder names = new StringBuilder();
+        for (Engine engine: engines) names.append(names.length() > 0 ? ", " : "").append(name(engine));
+        out.println("Engines:\t" + names);
+
+        // Known answers, also for the reference itself
+        boolean known = knownAnswers(Engine.REFERENCE, out);
+        for (Engine engine: engines) known &= knownAnswers(engine, out);
+        if (!known) {
+            out.println("Result:\t\tFAIL (known answers)");
+            return false;
+        }
+
+        // Random vectors
+        long begin = System.nanoTime();
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(this::work, "verify-" + t);
+            workers[t].start();
+        }
+        for (Thread worker: workers) worker.join();
+        double seconds = (System.nanoTime() - begin)/1e9;
+
+        out.println("Vectors:\t" + verified.get() + " of " + vectors + " (seed " + seed + ", " + threads + " threads)");
+        out.println("Oracle:\t\tJDK AES (" + Oracle.provider() + "), every vector, encryption and decryption");
+        out.println("Reference:\tRijndael against the JDK, " + (referenceEvery == 1 ? "every vector" : "1 in " + referenceEvery + " vectors"));
+        out.printf("Throughput:\t%.0f vectors/s%n", verified.get()/seconds);
+        synchronized (reports) {
+            for (String report: reports) out.print(report);
+        }
+        if (failures.get() > 0) {
+            out.println("Result:\t\tFAIL (" + failures.get() + " mismatches, rerun with --seed " + seed + ")");
+            return false;
+        }
+        out.println("Result:\t\tPASS");
+        return true;
+    }
+
+    /**
+     * Check the known answers, each block alone and all of them alternating
+     * in one batch longer than the key-agile lanes.
+     * @param engine engine
+     * @param out report destination
+     * @return true if all answers match
+     */
+    private boolean knownAnswers(Engine engine, PrintStream out) {
+        BlockEngine blockEngine = engine.create();
+        int count = 2*KeyAgileEngine.LANES + 1;
+        byte[] keys = new byte[16*count];
+        byte[] plaintexts = new byte[16*count];
+        byte[] ciphertexts = new byte[16*count];
+        for (int i = 0; i < count; i++) {
+            String[] answer = KNOWN_ANSWERS[i % KNOWN_ANSWERS.length];
+            BlockCodec.decodeHex(answer[1].getBytes(StandardCharsets.US_ASCII), 0, keys, 16*i);
+            BlockCodec.decodeHex(answer[2].getBytes(StandardCharsets.US_ASCII), 0, plaintexts, 16*i);
+            BlockCodec.decodeHex(answer[3].getBytes(StandardCharsets.US_ASCII), 0, ciphertexts, 16*i);
+        }
+        boolean result = true;
+        for (int n: new int[] {1, KNOWN_ANSWERS.length, count}) {
+            for (int first = 0; first < count; first += n) {
+                int m = Math.min(n, count-first);
+                byte[] k = Arrays.copyOfRange(keys, 16*first, 16*(first+m));
+                byte[] block = Arrays.copyOfRange(plaintexts, 16*first, 16*(first+m));
+                blockEngine.encryptBlocks(block, k, m);
+                result &= knownAnswer(engine, "encrypt", n, first, block, ciphertexts, out);
+                blockEngine.decryptBlocks(block, k, m);
+                result &= knownAnswer(engine, "decrypt", n, first, block, plaintexts, out);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compare the outputs of a known answer batch.
+     * @param engine engine
+     * @param operation "encrypt" or "decrypt"
+     * @param count batch size
+     * @param first index of the first block of the batch
+     * @param actual outputs of the batch
+     * @param expected expected outputs of all blocks
+     * @param out report destination
+     * @return true if all outputs match
+     */
+    private static boolean knownAnswer(Engine engine, String operation, int count, int first,
+            byte[] actual, byte[] expected, PrintStream out) {
+        boolean result = true;
+        for (int i = 0; i < actual.length/16; i++) {
+            int j = first+i;
+            if (!equal(actual, 16*i, expected, 16*j)) {
+                out.println("Known answer:\t" + name(engine) + " " + operation + " " + KNOWN_ANSWERS[j % KNOWN_ANSWERS.length][0]
+                        + " failed in a batch of " + count + ": expected " + hex(expected, 16*j) + ", actual " + hex(actual, 16*i));
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Body of one worker thread: verify chunks until all are taken or too
+     * many mismatches were found.
+     */
+    private void work() {
+        Oracle oracle = new Oracle();
+        Rijndael reference = new Rijndael();
+        int n = engines.size();
+        BlockEngine[] blockEngines = new BlockEngine[n];
+        for (int e = 0; e < n; e++) blockEngines[e] = engines.get(e).create();
+        byte[] plaintexts = new byte[16*batchSize];
+        byte[] keys = new byte[16*batchSize];
+        byte[] ciphertexts = new byte[16*batchSize]; // Ciphertexts of the oracle
+        byte[][] outputs = new byte[n][16*batchSize];
+        byte[][] scratch = new byte[2][16*batchSize]; // Blocks and keys of calls not starting at 0
+        byte[] pool = new byte[16*KEY_POOL];
+        int[] calls = new int[batchSize+1]; // Start of every engine call, then the end
+        byte[] block = new byte[16];
+        byte[] key = new byte[16];
+
+        long chunk;
+        while (failures.get() < maxFailures && (chunk = nextChunk.getAndIncrement())*batchSize < vectors) {
+            long first = chunk*batchSize;
+            int count = (int)Math.min(batchSize, vectors - first);
+            SplittableRandom random = new SplittableRandom(chunkSeed(seed, chunk));
+            fill(random, plaintexts, 16*count);
+            fill(random, pool, pool.length);
+            for (int i = 0; i < count; i++) {
+                if (random.nextBoolean()) System.arraycopy(pool, 16*random.nextInt(KEY_POOL), keys, 16*i, 16);
+                else fill(random, keys, 16*i, 16);
+            }
+            int segments = 0;
+            for (int i = 0; i < count; i += 1 + random.nextInt(batchSize)) calls[segments++] = i;
+            calls[segments] = count;
+            for (int i = 0; i < count; i++) oracle.run(false, plaintexts, keys, i, ciphertexts, 16*i);
+
+            // Encryption, every vector checked against the oracle
+            for (int e = 0; e < n; e++) {
+                System.arraycopy(plaintexts, 0, outputs[e], 0, 16*count);
+                call(blockEngines[e], false, outputs[e], keys, calls, segments, scratch);
+                for (int i = 0; i < count; i++) {
+                    if (!equal(outputs[e], 16*i, ciphertexts, 16*i))
+                        mismatch(engines.get(e), false, plaintexts, keys, calls, segments, i, first+i);
+                }
+            }
+
+            // Decryption of the oracle ciphertexts, every vector checked
+            // against its plaintext, i.e., the decryption of the oracle
+            for (int e = 0; e < n; e++) {
+                System.arraycopy(ciphertexts, 0, outputs[e], 0, 16*count);
+                call(blockEngines[e], true, outputs[e], keys, calls, segments, scratch);
+                for (int i = 0; i < count; i++) {
+                    if (!equal(outputs[e], 16*i, plaintexts, 16*i))
+                        mismatch(engines.get(e), true, ciphertexts, keys, calls, segments, i, first+i);
+                }
+            }
+
+            // Reference Rijndael against the oracle, every n-th vector
+            for (int i = 0; i < count; i++) {
+                if ((first+i) % referenceEvery != 0) continue;
+                System.arraycopy(plaintexts, 16*i, block, 0, 16);
+                System.arraycopy(keys, 16*i, key, 0, 16);
+                if (!equal(reference.encrypt(block, key), 0, ciphertexts, 16*i))
+                    mismatch(Engine.REFERENCE, false, plaintexts, keys, calls, segments, i, first+i);
+                System.arraycopy(ciphertexts, 16*i, block, 0, 16);
+                if (!equal(reference.decrypt(block, key), 0, plaintexts, 16*i))
+                    mismatch(Engine.REFERENCE, true, ciphertexts, keys, calls, segments, i, first+i);
+            }
+            verified.addAndGet(count);
+        }
+    }
+
+    /**
+     * Run an engine on the calls of a chunk.
+     * @param engine engine
+     * @param decrypt decrypt if true, encrypt otherwise
+     * @param blocks blocks of the chunk, replaced by the results
+     * @param keys keys of the chunk
+     * @param calls start of every call, then the end
+     * @param segments number of calls
+     * @param scratch two buffers of the chunk size
+     */
+    private static void call(BlockEngine engine, boolean decrypt, byte[] blocks, byte[] keys,
+            int[] calls, int segments, byte[][] scratch) {
+        for (int s = 0; s < segments; s++) {
+            int from = calls[s];
+            int to = calls[s+1];
+            if (from == 0) {
+                run(engine, decrypt, blocks, keys, to); // Engines start at offset 0
+            } else {
+                System.arraycopy(blocks, 16*from, scratch[0], 0, 16*(to-from));
+                System.arraycopy(keys, 16*from, scratch[1], 0, 16*(to-from));
+                run(engine, decrypt, scratch[0], scratch[1], to-from);
+                System.arraycopy(scratch[0], 0, blocks, 16*from, 16*(to-from));
+            }
+        }
+    }
+
+    /**
+     * Minimise and record a mismatch.
+     * @param engine engine
+     * @param decrypt mismatch in decryption if true, encryption otherwise
+     * @param inputs inputs of the chunk
+     * @param keys keys of the chunk
+     * @param calls start of every call, then the end
+     * @param segments number of calls
+     * @param index index of the failing vector in the chunk
+     * @param vector number of the failing vector in the run
+     */
+    private void mismatch(Engine engine, boolean decrypt, byte[] inputs, byte[] keys, int[] calls, int segments,
+            int index, long vector) {
+        if (failures.incrementAndGet() > maxFailures) return;
+        int s = 0;
+        while (calls[s+1] <= index) s++;
+        byte[] b = Arrays.copyOfRange(inputs, 16*calls[s], 16*calls[s+1]);
+        byte[] k = Arrays.copyOfRange(keys, 16*calls[s], 16*calls[s+1]);
+        String report = "Mismatch:\t" + name(engine) + (decrypt ? " decrypt" : " encrypt") + ", vector " + vector
+                + System.lineSeparator() + minimise(engine, decrypt, b, k, index-calls[s]);
+        synchronized (reports) {
+            reports.add(report);
+        }
+    }
+
+    /**
+     * Reduce a failing vector. The batch is cut after the vector, leading
+     * blocks are dropped while the mismatch persists (in halving steps, so
+     * that failures depending on the lane survive), the other blocks are
+     * zeroed if possible, and finally the set bits of key and input are
+     * cleared one by one, keeping every change after which the engine still
+     * disagrees with the oracle.
+     * @param engine engine
+     * @param decrypt mismatch in decryption if true, encryption otherwise
+     * @param inputs inputs of the batch the vector failed in
+     * @param keys keys of the batch
+     * @param index index of the vector in the batch
+     * @return reproducer, one line per item
+     */
+    static String minimise(Engine engine, boolean decrypt, byte[] inputs, byte[] keys, int index) {
+        BlockEngine blockEngine = engine.create();
+        Oracle oracle = new Oracle();
+
+        // Batch
+        if (fails(blockEngine, oracle, decrypt, slice(inputs, 0, index+1), slice(keys, 0, index+1), index)) {
+            inputs = slice(inputs, 0, index+1);
+            keys = slice(keys, 0, index+1);
+        }
+        for (int size = Integer.highestOneBit(Math.max(1, index)); size > 0; size /= 2) {
+            int count = inputs.length/16;
+            while (index >= size && fails(blockEngine, oracle, decrypt,
+                    slice(inputs, size, count), slice(keys, size, count), index-size)) {
+                inputs = slice(inputs, size, count);
+                keys = slice(keys, size, count);
+                index -= size;
+                count -= size;
+            }
+        }
+        int count = inputs.length/16;
+        boolean othersZero = true;
+        if (count > 1) {
+            byte[] zeroInputs = new byte[inputs.length];
+            byte[] zeroKeys = new byte[keys.length];
+            System.arraycopy(inputs, 16*index, zeroInputs, 16*index, 16);
+            System.arraycopy(keys, 16*index, zeroKeys, 16*index, 16);
+            othersZero = fails(blockEngine, oracle, decrypt, zeroInputs, zeroKeys, index);
+            if (othersZero) {
+                inputs = zeroInputs;
+                keys = zeroKeys;
+            }
+        }
+
+        // Bits of the vector
+        for (byte[] target: new byte[][] {keys, inputs}) {
+            for (int bit = 0; bit < 128; bit++) {
+                int i = 16*index + bit/8;
+                int mask = 0x80 >>> (bit % 8);
+                if ((target[i] & mask) == 0) continue;
+                target[i] ^= mask;
+                if (!fails(blockEngine, oracle, decrypt, inputs, keys, index)) target[i] ^= mask;
+            }
+        }
+
+        byte[] key = slice(keys, index, index+1);
+        byte[] input = slice(inputs, index, index+1);
+        byte[] expected = new byte[16];
+        oracle.run(decrypt, inputs, keys, index, expected, 0);
+        byte[] actual = inputs.clone();
+        run(blockEngine, decrypt, actual, keys, count);
+        String nl = System.lineSeparator();
+        StringBuilder result = new StringBuilder();
+        result.append("  batch:\t").append(count == 1 ? "single block" : "block " + index + " of " + count
+                + (othersZero ? ", other blocks zero" : ", other blocks below")).append(nl);
+        result.append("  key:\t\t").append(hex(key, 0)).append(nl);
+        result.append("  input:\t").append(hex(input, 0)).append(nl);
+        result.append("  expected:\t").append(hex(expected, 0)).append(nl);
+        result.append("  actual:\t").append(hex(actual, 16*index)).append(nl);
+        for (int i = 0; i < count && !othersZero; i++) {
+            if (i != index) result.append("  block ").append(i).append(":\t").append(hex(inputs, 16*i))
+                    .append(" key ").append(hex(keys, 16*i)).append(nl);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Does an engine disagree with the oracle on one vector of a batch?
+     * @param engine engine
+     * @param oracle oracle
+     * @param decrypt decrypt if true, encrypt otherwise
+     * @param inputs inputs of the batch
+     * @param keys keys of the batch
+     * @param index index of the vector
+     * @return true if the outputs differ
+     */
+    private static boolean fails(BlockEngine engine, Oracle oracle, boolean decrypt,
+            byte[] inputs, byte[] keys, int index) {
+        byte[] expected = new byte[16];
+        oracle.run(decrypt, inputs, keys, index, expected, 0);
+        byte[] actual = inputs.clone();
+        run(engine, decrypt, actual, keys, inputs.length/16);
+        return !equal(actual, 16*index, expected, 0);
+    }
+
+    /* HELPERS */
+
+    private static byte[] slice(byte[] blocks, int from, int to) {
+        return Arrays.copyOfRange(blocks, 16*from, 16*to);
+    }
+
+    private static void run(BlockEngine engine, boolean decrypt, byte[] blocks, byte[] keys, int count) {
+        if (decrypt) engine.decryptBlocks(blocks, keys, count);
+        else engine.encryptBlocks(blocks, keys, count);
+    }
+
+    /**
+     * Seed of a chunk: the run seed and chunk number mixed by the
+     * SplitMix64 finaliser, so that neighbouring chunks get unrelated streams.
+     * @param seed run seed
+     * @param chunk chunk number
+     * @return seed
+     */
+    static long chunkSeed(long seed, long chunk) {
+        long z = seed + (chunk+1)*0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30))*0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27))*0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Fill the start of a buffer with random bytes.
+     * @param random random source
+     * @param dst buffer
+     * @param length number of bytes
+     */
+    static void fill(SplittableRandom random, byte[] dst, int length) {
+        fill(random, dst, 0, length);
+    }
+
+    private static void fill(SplittableRandom random, byte[] dst, int off, int length) {
+        for (int i = off; i < off+length; i += 8) {
+            long r = random.nextLong();
+            for (int j = i; j < Math.min(i+8, off+length); j++, r >>>= 8) dst[j] = (byte)r;
+        }
+    }
+
+    private static boolean equal(byte[] a, int aOff, byte[] b, int bOff) {
+        for (int i = 0; i < 16; i++) {
+            if (a[aOff+i] != b[bOff+i]) return false;
+        }
+        return true;
+    }
+
+    private static String hex(byte[] src, int off) {
+        byte[] dst = new byte[BlockCodec.HEX_CHARS];
+        BlockCodec.encodeHex(src, off, dst, 0);
+        return new String(dst, StandardCharsets.US_ASCII);
+    }
+
+    private static String name(Engine engine) {
+        return engine.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+
+    /**
+     * AES implementation of the JDK as independent oracle, one per thread.
+     */
+    private static final class Oracle {
+
+        private final Cipher encryption;
+        private final Cipher decryption;
+
+        Oracle() {
+            try {
+                encryption = Cipher.getInstance("AES/ECB/NoPadding");
+                decryption = Cipher.getInstance("AES/ECB/NoPadding");
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException("AES not available", ex); // Required on every Java platform
+            }
+        }
+
+        /**
+         * Name of the provider implementing AES.
+         * @return provider name
+         */
+        static String provider() {
+            return new Oracle().encryption.getProvider().getName();
+        }
+
+        /**
+         * En/decrypt one vector of a batch.
+         * @param decrypt decrypt if true, encrypt otherwise
+         * @param inputs inputs of the batch
+         * @param keys keys of the batch
+         * @param index index of the vector
+         * @param dst output buffer
+         * @param dstOff offset of the output
+         */
+        void run(boolean decrypt, byte[] inputs, byte[] keys, int index, byte[] dst, int dstOff) {
+            Cipher cipher = decrypt ? decryption : encryption;
+            try {
+                cipher.init(decrypt ? Cipher.DECRYPT_MODE : Cipher.ENCRYPT_MODE, new SecretKeySpec(keys, 16*index, 16, "AES"));
+                cipher.doFinal(inputs, 16*index, 16, dst, dstOff);
+            } catch (GeneralSecurityException ex) {
+                throw new IllegalStateException(ex); // Cannot happen for 16 byte keys and blocks
+            }
+        }
+    }
+}
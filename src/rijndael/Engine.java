@@ -0,0 +1,34 @@
+package rijndael;
+
+import java.util.Locale;
+
+/**
+ * Available block engines.
+ */
+public enum Engine {
+
+    REFERENCE, // Rijndael as specified, see Rijndael.java
+    CACHED, // Allocation-free core with shared key schedule cache
+    KEY_AGILE; // Allocation-free core with round keys derived on the fly
+
+    /**
+     * Create a new engine instance.
+     * @return engine
+     */
+    public BlockEngine create() {
+        switch (this) {
+            case CACHED: return new CachedEngine();
+            case KEY_AGILE: return new KeyAgileEngine();
+            default: return new Rijndael();
+        }
+    }
+
+    /**
+     * Look up an engine by name, ignoring case.
+     * @param name engine name
+     * @return engine
+     */
+    public static Engine of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT).replace('-', '_'));
+    }
+}
@@ -0,0 +1,249 @@
+package rijndael;
+
+/**
+ * Allocation-free Rijndael operating in place on caller provided buffers.
+ * Same algorithm and state layout as Rijndael.java (column by column), but
+ * ShiftRows is done by swapping bytes and MixColumns by xtime instead of
+ * general GaloisField multiplication. Round keys are stored as 11 blocks of
+ * 16 bytes in one array of 176 bytes.
+ */
+final class FastCore {
+
+    static final int ROUND_KEYS = 16*11; // Bytes of an expanded key
+
+    // S-boxes as bytes
+    private static final byte[] S = new byte[256];
+    private static final byte[] INV_S = new byte[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            S[i] = (byte)Rijndael.S[i];
+            INV_S[i] = (byte)Rijndael.INV_S[i];
+        }
+    }
+
+    private FastCore() {
+    }
+
+    /* KEY EXPANSION */
+
+    /**
+     * Expand a cipher key into 11 round keys.
+     * @param key key buffer
+     * @param off offset of the key
+     * @param rk destination, 176 bytes
+     */
+    static void expandKey(byte[] key, int off, byte[] rk) {
+        System.arraycopy(key, off, rk, 0, 16);
+        for (int round = 1; round < 11; round++) {
+            System.arraycopy(rk, 16*(round-1), rk, 16*round, 16);
+            nextRoundKey(rk, 16*round, round);
+        }
+    }
+
+    /**
+     * Turn round key round-1 into round key round, in place.
+     * Applies g (rotate, S-box, Rcon) to the last word and XORs every word
+     * with its predecessor.
+     * @param rk round key buffer
+     * @param off offset of the round key
+     * @param round number of the new round key, 1 to 10
+     */
+    static void nextRoundKey(byte[] rk, int off, int round) {
+        rk[off] ^= S[rk[off+13] & 0xff] ^ Rijndael.RCON[round];
+        rk[off+1] ^= S[rk[off+14] & 0xff];
+        rk[off+2] ^= S[rk[off+15] & 0xff];
+        rk[off+3] ^= S[rk[off+12] & 0xff];
+        for (int i = off+4; i < off+16; i++) rk[i] ^= rk[i-4];
+    }
+
+    /**
+     * Turn round key round into round key round-1, in place.
+     * Inverse of nextRoundKey.
+     * @param rk round key buffer
+     * @param off offset of the round key
+     * @param round number of the current round key, 1 to 10
+     */
+    static void previousRoundKey(byte[] rk, int off, int round) {
+        for (int i = off+15; i >= off+4; i--) rk[i] ^= rk[i-4];
+        rk[off] ^= S[rk[off+13] & 0xff] ^ Rijndael.RCON[round];
+        rk[off+1] ^= S[rk[off+14] & 0xff];
+        rk[off+2] ^= S[rk[off+15] & 0xff];
+        rk[off+3] ^= S[rk[off+12] & 0xff];
+    }
+
+    /**
+     * Derive the round keys of the equivalent inverse cipher.
+     * Stored in order of use: round key 10, InvMixColumns of round keys 9 to
+     * 1, round key 0.
+     * @param rk encryption round keys, 176 bytes
+     * @param dk destination, 176 bytes
+     */
+    static void inverseKey(byte[] rk, byte[] dk) {
+        for (int round = 0; round < 11; round++) {
+            System.arraycopy(rk, 16*(10-round), dk, 16*round, 16);
+            if (round > 0 && round < 10) invMixColumns(dk, 16*round);
+        }
+    }
+
+    /* CIPHER */
+
+    /**
+     * AES Encryption of one block in place.
+     * @param rk round keys, 176 bytes
+     * @param block block buffer
+     * @param off offset of the block
+     */
+    static void encrypt(byte[] rk, byte[] block, int off) {
+        addRoundKey(block, off, rk, 0);
+        for (int round = 1; round < 10; round++) {
+            subShift(block, off);
+            mixColumns(block, off);
+            addRoundKey(block, off, rk, 16*round);
+        }
+        subShift(block, off);
+        addRoundKey(block, off, rk, 160);
+    }
+
+    /**
+     * AES Decryption of one block in place, using the equivalent inverse
+     * cipher.
+     * @param dk round keys from inverseKey, 176 bytes
+     * @param block block buffer
+     * @param off offset of the block
+     */
+    static void decrypt(byte[] dk, byte[] block, int off) {
+        addRoundKey(block, off, dk, 0);
+        for (int round = 1; round < 10; round++) {
+            invSubShift(block, off);
+            invMixColumns(block, off);
+            addRoundKey(block, off, dk, 16*round);
+        }
+        invSubShift(block, off);
+        addRoundKey(block, off, dk, 160);
+    }
+
+    /* OPERATIONS */
+
+    /**
+     * SubstituteBytes and ShiftRows in place.
+     * @param s state buffer
+     * @param o offset of the state
+     */
+    static void subShift(byte[] s, int o) {
+        byte t;
+        // Row 0: no shift
+        s[o] = S[s[o] & 0xff];
+        s[o+4] = S[s[o+4] & 0xff];
+        s[o+8] = S[s[o+8] & 0xff];
+        s[o+12] = S[s[o+12] & 0xff];
+        // Row 1: shift left by one
+        t = s[o+1];
+        s[o+1] = S[s[o+5] & 0xff];
+        s[o+5] = S[s[o+9] & 0xff];
+        s[o+9] = S[s[o+13] & 0xff];
+        s[o+13] = S[t & 0xff];
+        // Row 2: shift left by two
+        t = s[o+2];
+        s[o+2] = S[s[o+10] & 0xff];
+        s[o+10] = S[t & 0xff];
+        t = s[o+6];
+        s[o+6] = S[s[o+14] & 0xff];
+        s[o+14] = S[t & 0xff];
+        // Row 3: shift left by three
+        t = s[o+15];
+        s[o+15] = S[s[o+11] & 0xff];
+        s[o+11] = S[s[o+7] & 0xff];
+        s[o+7] = S[s[o+3] & 0xff];
+        s[o+3] = S[t & 0xff];
+    }
+
+    /**
+     * Inverse ShiftRows and inverse SubstituteBytes in place.
+     * @param s state buffer
+     * @param o offset of the state
+     */
+    static void invSubShift(byte[] s, int o) {
+        byte t;
+        // Row 0: no shift
+        s[o] = INV_S[s[o] & 0xff];
+        s[o+4] = INV_S[s[o+4] & 0xff];
+        s[o+8] = INV_S[s[o+8] & 0xff];
+        s[o+12] = INV_S[s[o+12] & 0xff];
+        // Row 1: shift right by one
+        t = s[o+13];
+        s[o+13] = INV_S[s[o+9] & 0xff];
+        s[o+9] = INV_S[s[o+5] & 0xff];
+        s[o+5] = INV_S[s[o+1] & 0xff];
+        s[o+1] = INV_S[t & 0xff];
+        // Row 2: shift right by two
+        t = s[o+2];
+        s[o+2] = INV_S[s[o+10] & 0xff];
+        s[o+10] = INV_S[t & 0xff];
+        t = s[o+6];
+        s[o+6] = INV_S[s[o+14] & 0xff];
+        s[o+14] = INV_S[t & 0xff];
+        // Row 3: shift right by three
+        t = s[o+3];
+        s[o+3] = INV_S[s[o+7] & 0xff];
+        s[o+7] = INV_S[s[o+11] & 0xff];
+        s[o+11] = INV_S[s[o+15] & 0xff];
+        s[o+15] = INV_S[t & 0xff];
+    }
+
+    /**
+     * MixColumns in place.
+     * @param s state buffer
+     * @param o offset of the state
+     */
+    static void mixColumns(byte[] s, int o) {
+        for (int c = o; c < o+16; c += 4) {
+            int a0 = s[c] & 0xff, a1 = s[c+1] & 0xff, a2 = s[c+2] & 0xff, a3 = s[c+3] & 0xff;
+            int all = a0 ^ a1 ^ a2 ^ a3;
+            // 2*a_i ^ 3*a_i+1 ^ a_i+2 ^ a_i+3 = a_i ^ all ^ 2*(a_i ^ a_i+1)
+            s[c] = (byte)(a0 ^ all ^ xtime(a0 ^ a1));
+            s[c+1] = (byte)(a1 ^ all ^ xtime(a1 ^ a2));
+            s[c+2] = (byte)(a2 ^ all ^ xtime(a2 ^ a3));
+            s[c+3] = (byte)(a3 ^ all ^ xtime(a3 ^ a0));
+        }
+    }
+
+    /**
+     * Inverse MixColumns in place.
+     * Multiplies by {04}x^2 + {05} first, which turns the inverse into the
+     * regular MixColumns.
+     * @param s state buffer
+     * @param o offset of the state
+     */
+    static void invMixColumns(byte[] s, int o) {
+        for (int c = o; c < o+16; c += 4) {
+            int u = xtime(xtime((s[c] ^ s[c+2]) & 0xff));
+            int v = xtime(xtime((s[c+1] ^ s[c+3]) & 0xff));
+            s[c] ^= u;
+            s[c+1] ^= v;
+            s[c+2] ^= u;
+            s[c+3] ^= v;
+        }
+        mixColumns(s, o);
+    }
+
+    /**
+     * AddRoundKey in place.
+     * @param s state buffer
+     * @param o offset of the state
+     * @param rk round key buffer
+     * @param k offset of the round key
+     */
+    static void addRoundKey(byte[] s, int o, byte[] rk, int k) {
+        for (int i = 0; i < 16; i++) s[o+i] ^= rk[k+i];
+    }
+
+    /**
+     * Multiplication by {02} in GF(2^8).
+     * @param a byte value 0 to 255
+     * @return result 0 to 255
+     */
+    static int xtime(int a) {
+        return ((a << 1) ^ ((a >>> 7)*0x1b)) & 0xff;
+    }
+}
@@ -0,0 +1,59 @@
+package rijndael;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Report sink writing one JSON object per line.
+ */
+public class JsonLinesReportSink extends BufferedReportSink {
+
+    /**
+     * Create a new JSON lines sink.
+     * @param out output stream, closed with the sink
+     */
+    public JsonLinesReportSink(OutputStream out) {
+        super(out);
+    }
+
+    @Override
+    public void meta(String name, String value) throws IOException {
+        putText("{\"meta\":" + quote(name) + ",\"value\":" + quote(value) + "}\n");
+    }
+
+    @Override
+    public void sample(long sample, int experiment, int variant, int bit, int round, int distance) throws IOException {
+        reserve();
+        put("{\"sample\":"); put(sample);
+        put(",\"experiment\":"); put(experiment);
+        put(",\"variant\":"); put(variant);
+        put(",\"bit\":"); put(bit);
+        put(",\"round\":"); put(round);
+        put(",\"distance\":"); put(distance);
+        put("}\n");
+    }
+
+    /**
+     * Quote a string as JSON string literal.
+     * @param s string
+     * @return JSON string
+     */
+    private static String quote(String s) {
+        StringBuilder result = new StringBuilder(s.length() + 2);
+        result.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"': result.append("\\\""); break;
+                case '\\': result.append("\\\\"); break;
+                case '\n': result.append("\\n"); break;
+                case '\r': result.append("\\r"); break;
+                case '\t': result.append("\\t"); break;
+                default:
+                    if (c < 0x20) result.append(String.format("\\u%04x", (int)c));
+                    else result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+}
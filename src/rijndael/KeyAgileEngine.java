@@ -0,0 +1,84 @@
+package rijndael;
+
+import java.util.Arrays;
+
+/**
+ * Block engine for workloads with one block per key.
+ * No key schedule is stored: every round key is derived from the previous
+ * one just before its round. LANES blocks are processed side by side, round
+ * by round, so that the independent computations of the lanes can overlap.
+ * The working set is the blocks plus 16 bytes of round key per lane, and
+ * nothing is allocated per call. The round keys are zeroed before
+ * every call returns.
+ */
+public class KeyAgileEngine implements BlockEngine {
+
+    static final int LANES = 4;
+
+    private final byte[] rk = new byte[16*LANES]; // Current round key of every lane
+
+    @Override
+    public void encryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        for (int first = 0; first < count; first += LANES) {
+            int lanes = Math.min(LANES, count-first);
+            System.arraycopy(keys, 16*first, rk, 0, 16*lanes);
+            for (int lane = 0; lane < lanes; lane++) {
+                FastCore.addRoundKey(blocks, 16*(first+lane), rk, 16*lane);
+            }
+            for (int round = 1; round < 11; round++) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int off = 16*(first+lane);
+                    FastCore.nextRoundKey(rk, 16*lane, round);
+                    FastCore.subShift(blocks, off);
+                    if (round < 10) FastCore.mixColumns(blocks, off);
+                    FastCore.addRoundKey(blocks, off, rk, 16*lane);
+                }
+            }
+        }
+        Arrays.fill(rk, (byte)0); // Do not keep key material between calls
+        if (event != null) {
+            BatchEvent.commit(event, Engine.KEY_AGILE, false, count);
+            CipherMetrics.blocks(count);
+        }
+    }
+
+    /**
+     * Decrypt a batch of blocks, each under its own key.
+     * The last round key is reached by running the key schedule forward,
+     * then the schedule is run backward alongside the inverse rounds.
+     * @param blocks ciphertext blocks, 16 bytes each, replaced by plaintexts
+     * @param keys decryption keys, 16 bytes each
+     * @param count number of blocks
+     */
+    @Override
+    public void decryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        for (int first = 0; first < count; first += LANES) {
+            int lanes = Math.min(LANES, count-first);
+            System.arraycopy(keys, 16*first, rk, 0, 16*lanes);
+            for (int round = 1; round < 11; round++) {
+                for (int lane = 0; lane < lanes; lane++) FastCore.nextRoundKey(rk, 16*lane, round);
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                FastCore.addRoundKey(blocks, 16*(first+lane), rk, 16*lane);
+            }
+            for (int round = 9; round >= 0; round--) {
+                for (int lane = 0; lane < lanes; lane++) {
+                    int off = 16*(first+lane);
+                    FastCore.previousRoundKey(rk, 16*lane, round+1);
+                    FastCore.invSubShift(blocks, off);
+                    FastCore.addRoundKey(blocks, off, rk, 16*lane);
+                    if (round > 0) FastCore.invMixColumns(blocks, off);
+                }
+            }
+        }
+        Arrays.fill(rk, (byte)0); // Do not keep key material between calls
+        if (event != null) {
+            BatchEvent.commit(event, Engine.KEY_AGILE, true, count);
+            CipherMetrics.blocks(count);
+        }
+    }
+}
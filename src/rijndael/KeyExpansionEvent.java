@@ -0,0 +1,16 @@
+package rijndael;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event for one key expansion.
+ */
+@Name("rijndael.KeyExpansion")
+@Label("Key Expansion")
+@Category("Rijndael")
+@Description("Expansion of a cipher key into 11 round keys")
+class KeyExpansionEvent extends jdk.jfr.Event {
+}
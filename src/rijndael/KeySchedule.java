@@ -0,0 +1,88 @@
+package rijndael;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Expanded key: encryption round keys and round keys of the equivalent
+ * inverse cipher. Schedules handed out by a KeyScheduleCache are reference
+ * counted, so that an evicted schedule is zeroed only once no thread uses it
+ * any more.
+ */
+public final class KeySchedule {
+
+    private static final int RETIRED = 1 << 30; // Flag in state, below it the number of users
+
+    private final byte[] encryption = new byte[FastCore.ROUND_KEYS];
+    private final byte[] decryption = new byte[FastCore.ROUND_KEYS];
+    private final AtomicInteger state = new AtomicInteger();
+
+    /**
+     * Expand a key.
+     * @param key key buffer
+     * @param off offset of the key
+     */
+    KeySchedule(byte[] key, int off) {
+        KeyExpansionEvent event = CipherMetrics.ENABLED ? new KeyExpansionEvent() : null;
+        if (event != null) event.begin();
+        FastCore.expandKey(key, off, encryption);
+        FastCore.inverseKey(encryption, decryption);
+        if (event != null) {
+            event.commit();
+            CipherMetrics.keyExpansion();
+        }
+    }
+
+    /**
+     * Encryption round keys, 176 bytes.
+     * @return round keys
+     */
+    byte[] encryption() {
+        return encryption;
+    }
+
+    /**
+     * Round keys of the equivalent inverse cipher, 176 bytes.
+     * @return round keys
+     */
+    byte[] decryption() {
+        return decryption;
+    }
+
+    /**
+     * Register a user. Called by the cache under its lock.
+     */
+    void retain() {
+        state.incrementAndGet();
+    }
+
+    /**
+     * Unregister a user, zeroing the schedule if it is retired and unused.
+     */
+    void release() {
+        if (state.decrementAndGet() == RETIRED) zero();
+    }
+
+    /**
+     * Retire this schedule after eviction, zeroing it if unused.
+     */
+    void retire() {
+        if (state.getAndAdd(RETIRED) == 0) zero();
+    }
+
+    /**
+     * Has this schedule been zeroed or is it about to be?
+     * @return true if retired
+     */
+    boolean isRetired() {
+        return (state.get() & RETIRED) != 0;
+    }
+
+    /**
+     * Overwrite all round keys.
+     */
+    private void zero() {
+        Arrays.fill(encryption, (byte)0);
+        Arrays.fill(decryption, (byte)0);
+    }
+}
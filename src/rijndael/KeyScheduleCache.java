@@ -0,0 +1,222 @@
+package rijndael;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe, bounded cache of key schedules.
+ * Keys are spread over independently locked stripes by hash; every stripe
+ * is an LRU map holding an equal share of the capacity. Evicted keys and
+ * schedules are zeroed, schedules as soon as the last user released them.
+ * Lookups allocate nothing.
+ * Usage: schedule = cache.acquire(key, off); … cache.release(schedule);
+ */
+public class KeyScheduleCache {
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create a new cache with one stripe per 64 entries, at most 64 stripes.
+     * @param capacity maximum number of schedules
+     */
+    public KeyScheduleCache(int capacity) {
+        this(capacity, Math.min(64, Math.max(1, capacity / 64)));
+    }
+
+    /**
+     * Create a new cache.
+     * @param capacity maximum number of schedules
+     * @param stripes number of stripes, rounded up to a power of two
+     */
+    public KeyScheduleCache(int capacity, int stripes) {
+        if (capacity < 1 || stripes < 1) throw new IllegalArgumentException("Capacity and stripes must be positive");
+        int n = Integer.highestOneBit(stripes);
+        if (n < stripes) n <<= 1;
+        n = Math.min(n, Integer.highestOneBit(capacity)); // Every stripe holds at least one entry
+        this.stripes = new Stripe[n];
+        this.mask = n-1;
+        for (int i = 0; i < n; i++) this.stripes[i] = new Stripe(capacity/n + (i < capacity%n ? 1 : 0));
+    }
+
+    /**
+     * Get the schedule of a key, expanding the key on a miss.
+     * The schedule stays valid until it is released.
+     * @param key key buffer
+     * @param off offset of the key
+     * @return schedule
+     */
+    public KeySchedule acquire(byte[] key, int off) {
+        int hash = Key.hash(key, off);
+        // Stripe from multiplied middle bits, the maps index buckets by the low bits
+        Stripe stripe = stripes[((hash * 0x9E3779B9) >>> 16) & mask];
+        synchronized (stripe) {
+            KeySchedule result = stripe.get(stripe.probe.set(key, off, hash));
+            if (result == null) {
+                misses.increment();
+                if (CipherMetrics.ENABLED) CipherMetrics.cacheMiss();
+                result = new KeySchedule(key, off);
+                stripe.put(new Key(key, off, hash), result);
+                if (stripe.size() > stripe.capacity) evict(stripe);
+            } else {
+                hits.increment();
+                if (CipherMetrics.ENABLED) CipherMetrics.cacheHit();
+            }
+            result.retain();
+            stripe.probe.set(null, 0, 0); // Do not keep a reference to the key
+            return result;
+        }
+    }
+
+    /**
+     * Remove the least recently used entry of a stripe and zero it.
+     * The key is zeroed only after removal, the map still has to find it.
+     * @param stripe stripe, locked by the caller
+     */
+    private void evict(Stripe stripe) {
+        Iterator<Map.Entry<Key, KeySchedule>> it = stripe.entrySet().iterator();
+        Map.Entry<Key, KeySchedule> eldest = it.next();
+        Key key = eldest.getKey();
+        KeySchedule schedule = eldest.getValue();
+        it.remove();
+        key.zero();
+        schedule.retire();
+        evictions.increment();
+    }
+
+    /**
+     * Release a schedule obtained from acquire.
+     * @param schedule schedule
+     */
+    public void release(KeySchedule schedule) {
+        schedule.release();
+    }
+
+    /**
+     * Remove and zero all entries.
+     */
+    public void clear() {
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                for (Map.Entry<Key, KeySchedule> entry: stripe.entrySet()) {
+                    entry.getKey().zero();
+                    entry.getValue().retire();
+                }
+                stripe.clear();
+            }
+        }
+    }
+
+    /**
+     * Number of lookups served from the cache.
+     * @return hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of lookups that had to expand the key.
+     * @return misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of evicted schedules.
+     * @return evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Number of cached schedules.
+     * @return size
+     */
+    public int size() {
+        int result = 0;
+        for (Stripe stripe: stripes) {
+            synchronized (stripe) {
+                result += stripe.size();
+            }
+        }
+        return result;
+    }
+
+    /**
+     * One stripe: an LRU map guarded by its own monitor.
+     */
+    private final class Stripe extends LinkedHashMap<Key, KeySchedule> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int capacity;
+        private final Key probe = new Key(); // Reusable lookup key, used under the lock
+
+        Stripe(int capacity) {
+            super(2*capacity, 0.75f, true); // Access order
+            this.capacity = capacity;
+        }
+    }
+
+    /**
+     * Cipher key as map key. Stored keys own a copy of the key bytes, the
+     * probe refers to the caller's buffer.
+     */
+    private static final class Key {
+
+        private byte[] bytes;
+        private int off;
+        private int hash;
+
+        Key() {
+        }
+
+        Key(byte[] key, int off, int hash) {
+            this.bytes = Arrays.copyOfRange(key, off, off+16);
+            this.hash = hash;
+        }
+
+        Key set(byte[] key, int off, int hash) {
+            this.bytes = key;
+            this.off = off;
+            this.hash = hash;
+            return this;
+        }
+
+        void zero() {
+            Arrays.fill(bytes, (byte)0);
+        }
+
+        static int hash(byte[] key, int off) {
+            int result = 1;
+            for (int i = off; i < off+16; i++) result = 31*result + key[i];
+            return result;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key)o;
+            if (hash != other.hash) return false;
+            for (int i = 0; i < 16; i++) {
+                if (bytes[off+i] != other.bytes[other.off+i]) return false;
+            }
+            return true;
+        }
+    }
+}
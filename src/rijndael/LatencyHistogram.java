@@ -0,0 +1,96 @@
+package rijndael;
+
+/**
+ * Histogram of non-negative values (nanoseconds) with logarithmic buckets.
+ * Values below 2^SUB_BITS are counted exactly, larger values in buckets of
+ * relative width below 2^-(SUB_BITS-1), i.e., under 1.6% error. Recording
+ * is a few shifts and an array increment and allocates nothing. Not
+ * thread-safe: use one histogram per thread and merge.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BITS = 7; // Bins per power of two: 2^(SUB_BITS-1)
+    private static final int HALF = 1 << (SUB_BITS-1);
+
+    private final long[] counts = new long[(66-SUB_BITS) << (SUB_BITS-1)];
+    private long total = 0;
+    private long max = 0;
+
+    /**
+     * Record a value.
+     * @param value value, negative values are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        counts[index(value)]++;
+        total++;
+        if (value > max) max = value;
+    }
+
+    /**
+     * Add all values of another histogram.
+     * @param other histogram
+     */
+    public void merge(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Number of recorded values.
+     * @return count
+     */
+    public long count() {
+        return total;
+    }
+
+    /**
+     * Largest recorded value.
+     * @return maximum
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Value at a percentile, i.e., the upper bound of the bin containing it.
+     * @param percentile percentile between 0 and 100
+     * @return value
+     */
+    public long percentile(double percentile) {
+        if (total == 0) return 0;
+        long rank = Math.max(1, (long)Math.ceil(percentile/100*total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return Math.min(upperBound(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Bin of a value.
+     * @param value non-negative value
+     * @return bin index
+     */
+    static int index(long value) {
+        if (value < 2*HALF) return (int)value; // Exact bins
+        int bucket = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS; // Power of two
+        int sub = (int)(value >>> bucket); // Top SUB_BITS bits, in [HALF, 2*HALF)
+        return (bucket << (SUB_BITS-1)) + sub;
+    }
+
+    /**
+     * Largest value of a bin.
+     * @param index bin index
+     * @return value
+     */
+    static long upperBound(int index) {
+        if (index < 2*HALF) return index;
+        int bucket = (index >> (SUB_BITS-1)) - 1;
+        long sub = index - ((long)bucket << (SUB_BITS-1));
+        long result = ((sub+1) << bucket) - 1;
+        return result < 0 ? Long.MAX_VALUE : result; // Top bin overflows
+    }
+}
@@ -0,0 +1,100 @@
+package rijndael;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal parser for command line options of the form --name value.
+ */
+public class Options {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    /**
+     * Parse options.
+     * An option without a value (followed by another option or the end of
+     * the arguments) is stored as "true".
+     * @param args the command line arguments
+     * @param from index of the first option
+     * @return parsed options
+     */
+    public static Options parse(String[] args, int from) {
+        Options result = new Options();
+        for (int i = from; i < args.length; i++) {
+            if (!args[i].startsWith("--"))
+                throw new IllegalArgumentException("Unexpected argument: " + args[i]);
+            String name = args[i].substring(2);
+            if (i+1 < args.length && !args[i+1].startsWith("--")) result.values.put(name, args[++i]);
+            else result.values.put(name, "true");
+        }
+        return result;
+    }
+
+    /**
+     * Check whether an option is present.
+     * @param name option name
+     * @return true if present
+     */
+    public boolean has(String name) {
+        return values.containsKey(name);
+    }
+
+    /**
+     * Get an option value.
+     * @param name option name
+     * @param defaultValue value if option is absent
+     * @return value
+     */
+    public String get(String name, String defaultValue) {
+        String value = values.get(name);
+        return value == null ? defaultValue : value;
+    }
+
+    /**
+     * Get a mandatory option value.
+     * @param name option name
+     * @return value
+     */
+    public String require(String name) {
+        String value = values.get(name);
+        if (value == null) throw new IllegalArgumentException("Missing option --" + name);
+        return value;
+    }
+
+    /**
+     * Get an integer option value.
+     * @param name option name
+     * @param defaultValue value if option is absent
+     * @return value
+     */
+    public int getInt(String name, int defaultValue) {
+        return has(name) ? Integer.parseInt(values.get(name)) : defaultValue;
+    }
+
+    /**
+     * Get a long option value.
+     * @param name option name
+     * @param defaultValue value if option is absent
+     * @return value
+     */
+    public long getLong(String name, long defaultValue) {
+        return has(name) ? Long.parseLong(values.get(name)) : defaultValue;
+    }
+
+    /**
+     * Get a half-open range option of the form from:to.
+     * @param name option name
+     * @param from default start
+     * @param to default end (exclusive)
+     * @return {from, to}
+     */
+    public long[] getRange(String name, long from, long to) {
+        if (!has(name)) return new long[] {from, to};
+        String value = values.get(name);
+        int sep = value.indexOf(':');
+        if (sep < 0) throw new IllegalArgumentException("Expected from:to for --" + name);
+        long[] result = {Long.parseLong(value.substring(0, sep)), Long.parseLong(value.substring(sep+1))};
+        if (result[0] > result[1]) throw new IllegalArgumentException("Empty range for --" + name);
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+package rijndael;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Round trip check of the binary report format.
+ * Reports written by BinaryReportSink are read back by BinaryReportReader
+ * and must reproduce the rows and metadata written, both for synthetic rows
+ * at the limits of every column and for a real avalanche analysis, whose
+ * CSV conversion must equal a report written as CSV directly. Malformed
+ * input must be rejected.
+ */
+public class ReportCheck {
+
+    private static final int ROWS = 2*BinaryReportSink.CHUNK_ROWS + 3; // Two full chunks and a partial one
+
+    private final List<String> failed = new ArrayList<>();
+
+    /**
+     * Run all checks and print a report.
+     * @param out report destination
+     * @return true if every check passed
+     * @throws IOException if a report cannot be written
+     */
+    public boolean run(PrintStream out) throws IOException {
+        out.println("REPORT CHECK");
+
+        // Synthetic rows
+        Recording expected = new Recording();
+        writeSynthetic(expected);
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        try (ReportSink sink = new BinaryReportSink(binary)) {
+            writeSynthetic(sink);
+        }
+        Recording actual = new Recording();
+        try (BinaryReportReader reader = new BinaryReportReader(new ByteArrayInputStream(binary.toByteArray()))) {
+            reader.copyTo(actual);
+        }
+        report(out, "synthetic rows", expected.records.equals(actual.records));
+
+        // Real analysis, binary converted to CSV against CSV written directly
+        Rijndael rj = new Rijndael();
+        byte[] plaintext = new byte[BlockCodec.BLOCK];
+        byte[] key = new byte[BlockCodec.BLOCK];
+        BlockCodec.decodeHex("3243f6a8885a308d313198a2e0370734".getBytes(StandardCharsets.US_ASCII), 0, plaintext, 0);
+        BlockCodec.decodeHex("2b7e151628aed2a6abf7158809cf4f3c".getBytes(StandardCharsets.US_ASCII), 0, key, 0);
+        AvalancheShard shard = AvalancheShard.fixed(plaintext, key, 0, AvalancheShard.CELLS);
+        ByteArrayOutputStream direct = new ByteArrayOutputStream();
+        try (ReportSink sink = new CsvReportSink(direct)) {
+            shard.run(rj, sink);
+        }
+        binary.reset();
+        try (ReportSink sink = new BinaryReportSink(binary)) {
+            shard.run(rj, sink);
+        }
+        ByteArrayOutputStream converted = new ByteArrayOutputStream();
+        try (BinaryReportReader reader = new BinaryReportReader(new ByteArrayInputStream(binary.toByteArray()));
+                ReportSink sink = new CsvReportSink(converted)) {
+            reader.copyTo(sink);
+        }
+        report(out, "avalanche as csv", Arrays.equals(direct.toByteArray(), converted.toByteArray()));
+
+        // Malformed input
+        byte[] valid = binary.toByteArray();
+        byte[] magic = valid.clone();
+        magic[3] = '2';
+        byte[] tag = valid.clone();
+        tag[4] = 'X';
+        byte[] trailing = Arrays.copyOf(valid, valid.length+1);
+        report(out, "wrong magic", rejects(magic));
+        report(out, "unknown record", rejects(tag));
+        report(out, "truncated", rejects(Arrays.copyOf(valid, valid.length-1)));
+        report(out, "data after end", rejects(trailing));
+
+        if (failed.isEmpty()) {
+            out.println("Result:\t\tPASS");
+            return true;
+        }
+        out.println("Result:\t\tFAIL (" + String.join(", ", failed) + ")");
+        return false;
+    }
+
+    /**
+     * Write rows covering the range of every column, with metadata between
+     * them so that chunks of every size are written.
+     * @param sink destination
+     * @throws IOException if writing fails
+     */
+    private static void writeSynthetic(ReportSink sink) throws IOException {
+        sink.meta("plaintext", "00112233445566778899aabbccddeeff");
+        sink.meta("", "");
+        for (int i = 0; i < ROWS; i++) {
+            if (i == 1000) sink.meta("note", "Zwischenstand äöü €"); // Non-ASCII, modified UTF-8
+            long sample = i == 0 ? Long.MIN_VALUE : i == 1 ? Long.MAX_VALUE : i*0x9E3779B97F4A7C15L;
+            sink.sample(sample, i % AvalancheAccumulator.EXPERIMENTS, i % AvalancheAccumulator.VARIANTS,
+                    i % AvalancheAccumulator.BITS, i % AvalancheAccumulator.ROUNDS, i % (AvalancheAccumulator.BITS+1));
+        }
+        sink.meta("end", "synthetic");
+    }
+
+    /**
+     * Does the reader reject a report?
+     * @param report report bytes
+     * @return true if reading fails with an IOException
+     */
+    private static boolean rejects(byte[] report) {
+        try (BinaryReportReader reader = new BinaryReportReader(new ByteArrayInputStream(report))) {
+            reader.copyTo(new Recording());
+            return false;
+        } catch (IOException ex) {
+            return true;
+        }
+    }
+
+    /**
+     * Print the result of one check.
+     * @param out report destination
+     * @param name name of the check
+     * @param ok result
+     */
+    private void report(PrintStream out, String name, boolean ok) {
+        out.printf("%-20s%s%n", name + ":", ok ? "ok" : "FAILED");
+        if (!ok) failed.add(name);
+    }
+
+    /**
+     * Sink keeping every record as text.
+     */
+    private static final class Recording implements ReportSink {
+
+        final List<String> records = new ArrayList<>();
+
+        @Override
+        public void meta(String name, String value) {
+            records.add("M " + name + "=" + value);
+        }
+
+        @Override
+        public void sample(long sample, int experiment, int variant, int bit, int round, int distance) {
+            records.add(sample + "," + experiment + "," + variant + "," + bit + "," + round + "," + distance);
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package rijndael;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Available report formats.
+ */
+public enum ReportFormat {
+
+    CSV("csv"),
+    JSON("jsonl"),
+    BINARY("avr");
+
+    private final String extension;
+
+    ReportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Usual file name extension.
+     * @return extension without dot
+     */
+    public String extension() {
+        return extension;
+    }
+
+    /**
+     * Look up a format by name, ignoring case.
+     * @param name csv, json or binary
+     * @return format
+     */
+    public static ReportFormat of(String name) {
+        return valueOf(name.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * Open a sink of this format.
+     * @param out output stream, closed with the sink
+     * @return sink
+     * @throws IOException if the sink cannot be created
+     */
+    public ReportSink open(OutputStream out) throws IOException {
+        switch (this) {
+            case CSV: return new CsvReportSink(out);
+            case JSON: return new JsonLinesReportSink(out);
+            default: return new BinaryReportSink(out);
+        }
+    }
+
+    /**
+     * Open a sink of this format writing to a file.
+     * @param file target file
+     * @return sink
+     * @throws IOException if the file cannot be created
+     */
+    public ReportSink open(File file) throws IOException {
+        return open(new FileOutputStream(file));
+    }
+}
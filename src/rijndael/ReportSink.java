@@ -0,0 +1,32 @@
+package rijndael;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Destination for avalanche reports.
+ * Receives descriptive metadata (plaintext, key,…) and one row per sample,
+ * i.e., the hamming distance of one altered bit in one round of one variant.
+ */
+public interface ReportSink extends Closeable {
+
+    /**
+     * Write a metadata entry.
+     * @param name name
+     * @param value value
+     * @throws IOException if writing fails
+     */
+    void meta(String name, String value) throws IOException;
+
+    /**
+     * Write one sample row.
+     * @param sample sample id (RNG seed, 0 for a fixed plaintext and key)
+     * @param experiment experiment index (0: P_i under K, 1: P under K_i)
+     * @param variant algorithm type (AES0, AES1,…)
+     * @param bit altered bit position
+     * @param round round 0 to 10
+     * @param distance hamming distance
+     * @throws IOException if writing fails
+     */
+    void sample(long sample, int experiment, int variant, int bit, int round, int distance) throws IOException;
+}
@@ -1,6 +1,7 @@
 package rijndael ;
 
-import java.io.FileNotFoundException;
+import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -9,7 +10,7 @@ import java.util.logging.Logger;
  * Rijndael implementation in Java
  * @author prouast Pnorth
  */
-public class Rijndael {
+public class Rijndael implements BlockEngine {
     
     /* CONSTANTS */
     
@@ -21,7 +22,7 @@ public class Rijndael {
     private static final int IRREDUCIBLE_POLYNOMIAL = 283; // Irr. polynomial
     
     // S-box copied from http://en.wikipedia.org/wiki/Rijndael_S-box
-    private static final char S[] = {
+    static final char S[] = {
         0x63, 0x7C, 0x77, 0x7B, 0xF2, 0x6B, 0x6F, 0xC5, 0x30, 0x01, 0x67, 0x2B, 0xFE, 0xD7, 0xAB, 0x76,
         0xCA, 0x82, 0xC9, 0x7D, 0xFA, 0x59, 0x47, 0xF0, 0xAD, 0xD4, 0xA2, 0xAF, 0x9C, 0xA4, 0x72, 0xC0,
         0xB7, 0xFD, 0x93, 0x26, 0x36, 0x3F, 0xF7, 0xCC, 0x34, 0xA5, 0xE5, 0xF1, 0x71, 0xD8, 0x31, 0x15,
@@ -41,7 +42,7 @@ public class Rijndael {
     };
     
     // Inverse S-box copied from http://en.wikipedia.org/wiki/Rijndael_S-box
-    private static final char INV_S[] = {
+    static final char INV_S[] = {
         0x52, 0x09, 0x6A, 0xD5, 0x30, 0x36, 0xA5, 0x38, 0xBF, 0x40, 0xA3, 0x9E, 0x81, 0xF3, 0xD7, 0xFB,
         0x7C, 0xE3, 0x39, 0x82, 0x9B, 0x2F, 0xFF, 0x87, 0x34, 0x8E, 0x43, 0x44, 0xC4, 0xDE, 0xE9, 0xCB,
         0x54, 0x7B, 0x94, 0x32, 0xA6, 0xC2, 0x23, 0x3D, 0xEE, 0x4C, 0x95, 0x0B, 0x42, 0xFA, 0xC3, 0x4E,
@@ -61,7 +62,7 @@ public class Rijndael {
     };
     
     // Rcon constants copied from http://en.wikipedia.org/wiki/Rijndael_key_schedule
-    private static final char RCON[] = {
+    static final char RCON[] = {
         0x8d, 0x01, 0x02, 0x04, 0x08, 0x10, 0x20, 0x40, 0x80, 0x1b, 0x36, 0x6c, 0xd8, 0xab, 0x4d, 0x9a, 
         0x2f, 0x5e, 0xbc, 0x63, 0xc6, 0x97, 0x35, 0x6a, 0xd4, 0xb3, 0x7d, 0xfa, 0xef, 0xc5, 0x91, 0x39, 
         0x72, 0xe4, 0xd3, 0xbd, 0x61, 0xc2, 0x9f, 0x25, 0x4a, 0x94, 0x33, 0x66, 0xcc, 0x83, 0x1d, 0x3a, 
@@ -110,6 +111,8 @@ public class Rijndael {
      */
     public byte[] encrypt(byte[] state, byte[] key) {
         
+        if (CipherMetrics.ENABLED) CipherMetrics.blocks(1);
+        
         // Expand the cipher key into 11 subkeys and prepare for usage
         byte[][] expandedKey = mapKey(expand(key));
         
@@ -138,6 +141,8 @@ public class Rijndael {
      */
     public byte[] decrypt(byte[] state, byte[] key) {
         
+        if (CipherMetrics.ENABLED) CipherMetrics.blocks(1);
+        
         // Expand the cipher key into 11 subkeys and prepare for usage
         // Round keys are used from last to first in decryption.
         byte[][] expandedKey = mapKey(expand(key));
@@ -157,6 +162,48 @@ public class Rijndael {
         return state;
     }
     
+    /**
+     * AES Encryption of a batch of blocks, each under its own key.
+     * Blocks are replaced by their ciphertexts.
+     * @param blocks plaintext blocks, 16 bytes each
+     * @param keys encryption keys, 16 bytes each
+     * @param count number of blocks
+     */
+    @Override
+    public void encryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        byte[] state = new byte[16];
+        byte[] key = new byte[16];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(blocks, 16*i, state, 0, 16);
+            System.arraycopy(keys, 16*i, key, 0, 16);
+            System.arraycopy(encrypt(state, key), 0, blocks, 16*i, 16);
+        }
+        if (event != null) BatchEvent.commit(event, Engine.REFERENCE, false, count);
+    }
+    
+    /**
+     * AES Decryption of a batch of blocks, each under its own key.
+     * Blocks are replaced by their plaintexts.
+     * @param blocks ciphertext blocks, 16 bytes each
+     * @param keys decryption keys, 16 bytes each
+     * @param count number of blocks
+     */
+    @Override
+    public void decryptBlocks(byte[] blocks, byte[] keys, int count) {
+        BatchEvent event = CipherMetrics.ENABLED ? new BatchEvent() : null;
+        if (event != null) event.begin();
+        byte[] state = new byte[16];
+        byte[] key = new byte[16];
+        for (int i = 0; i < count; i++) {
+            System.arraycopy(blocks, 16*i, state, 0, 16);
+            System.arraycopy(keys, 16*i, key, 0, 16);
+            System.arraycopy(decrypt(state, key), 0, blocks, 16*i, 16);
+        }
+        if (event != null) BatchEvent.commit(event, Engine.REFERENCE, true, count);
+    }
+    
     /**
      * Composite method for different versions of the algorithm.
      * Called by assignmentEncryption.
@@ -170,17 +217,32 @@ public class Rijndael {
         
         byte[][] expandedKey = mapKey(expand(key));
         
+        return roundWithKey(state, expandedKey[round], round, type);
+    }
+    
+    /**
+     * Composite method for different versions of the algorithm, given the
+     * round key instead of the cipher key.
+     * Used by the avalanche analysis, which derives round keys on the fly.
+     * @param state input state
+     * @param roundKey round key of this round
+     * @param round encryption round
+     * @param type algorithm type (AES0, AES1,…)
+     * @return modified state
+     */
+    byte[] roundWithKey(byte[] state, byte[] roundKey, int round, int type) {
+        
         switch (round) {
             case 10: {
                 if (type != 1) state = substituteBytes(state);
                 if (type != 2) state = shiftRows(state);
-                if (type != 4) state = addRoundKey(state, expandedKey[round]);
+                if (type != 4) state = addRoundKey(state, roundKey);
             } break;
             default: {
                 if (type != 1) state = substituteBytes(state);
                 if (type != 2) state = shiftRows(state);
                 if (type != 3) state = mixColumns(state);
-                if (type != 4) state = addRoundKey(state, expandedKey[round]);
+                if (type != 4) state = addRoundKey(state, roundKey);
             } break;
         }
         
@@ -196,11 +258,28 @@ public class Rijndael {
      * @param key encryption key
      */
     public void assignmentEncryption(String plaintext, String key) {
-        
         try {
-            
-            // Write output to this file
-            PrintWriter out = new PrintWriter("output_encryption.txt");
+            assignmentEncryption(plaintext, key, new File("output_encryption.txt"), null);
+        } catch (IOException ex) {
+            Logger.getLogger(Rijndael.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Method containing encryption and avalanche analysis.
+     * Save the summary to a text file and, optionally, every avalanche sample
+     * to a report sink.
+     * @param plaintext plaintext
+     * @param key encryption key
+     * @param output summary file
+     * @param samples sink for avalanche samples, may be null; not closed
+     * @throws IOException if the summary or a sample cannot be written
+     */
+    public void assignmentEncryption(String plaintext, String key, File output, ReportSink samples)
+            throws IOException {
+        
+        // Write output to this file
+        try (PrintWriter out = new PrintWriter(output)) {
             
             out.println("ENCRYPTION");
             out.println("Plaintext P:\t" + plaintext);
@@ -215,136 +294,29 @@ public class Rijndael {
             byte[] stateC = encrypt(stateP, stateK); // Do regular encryption
             long endTime = System.currentTimeMillis();
             
-            out.println("Ciphertext C:\t" + convertToString(stateC));
+            String ciphertext = convertToString(stateC);
+            out.println("Ciphertext C:\t" + ciphertext);
             out.println("Running time:\t" + (endTime-startTime) + " ms");
             
-            // Avalanche
+            if (samples != null) {
+                samples.meta("plaintext", plaintext);
+                samples.meta("key", key);
+                samples.meta("ciphertext", ciphertext);
+            }
+            
+            // Avalanche over all variants and bit positions
             out.println("Avalanche:");
+            AvalancheAccumulator avalanche = AvalancheShard.fixed(stateP, stateK, 0, AvalancheShard.CELLS).run(this, samples);
             
             // 1. P under K and P_i under K
             out.println("P under K and P_i under K");
-            out.println("Round\t\tAES0\t\tAES1\t\tAES2\t\tAES3\t\tAES4");
-            
-            // Arrays to store results
-            int[][] distPunderKPiunderK = new int[5][128];
-            byte[][][] statePiunderK = new byte[5][128][16]; // Store P_i under K
-            byte[][] statePunderK = new byte[5][16]; // Store P under K
-            
-            // Prepare P_i under K
-            for (byte[][] statePi1 : statePiunderK) {
-                for (int j = 0; j < statePiunderK[0].length; j++) {
-                    // Deep copy of Plaintext
-                    System.arraycopy(stateP, 0, statePi1[j], 0, statePiunderK[0][0].length);
-                    // Alter state
-                    statePi1[j] = alteredState(statePi1[j], j);
-                }
-            }
-            
-            // Prepare P under K
-            for (byte[] statePunderK1 : statePunderK) {
-                // Deep copy of Plaintext
-                System.arraycopy(stateP, 0, statePunderK1, 0, statePunderK[0].length);
-            }
-            
-            // Round 0
-            out.print("0\t\t");
-            for (int i = 0; i < 5; i++) {
-                for (int j = 0; j < 128; j++) {
-                    distPunderKPiunderK[i][j] = hammingDist(statePunderK[i], statePiunderK[i][j]); // Calculate hamming distance
-                }
-                out.print("" + average(distPunderKPiunderK[i]) + "\t\t"); // Print average distance
-            }
-            out.println();
-            
-            // AddRoundKey
-            for (int i = 0; i < 5; i++) {
-                statePunderK[i] = addRoundKey(statePunderK[i], stateK); // To P
-                for (int j = 0; j < 128; j++) {
-                    statePiunderK[i][j] = addRoundKey(statePiunderK[i][j], stateK); // To P_i
-                }
-            }
-            
-            // Round 1-10
-            for (int i = 1; i < 11; i++) {
-                out.print("" + i + "\t\t");
-                for (int j = 0; j < 5; j++) {
-                    statePunderK[j] = round(statePunderK[j], stateK, i, j); // Apply operations to P
-                    for (int k = 0; k < 128; k++) {
-                        statePiunderK[j][k] = round(statePiunderK[j][k], stateK, i, j); // Apply operations to P_i
-                        distPunderKPiunderK[j][k] = hammingDist(statePunderK[j], statePiunderK[j][k]); // Calculate hamming distance
-                    }
-                    out.print("" + average(distPunderKPiunderK[j]) + "\t\t"); // Print average distance
-                }
-                out.println();
-            }
+            avalanche.printTable(out, AvalancheAccumulator.EXPERIMENT_PLAINTEXT);
             
             // 2. P under K and K_i
             out.println("P under K and P under K_i");
-            out.println("Round\t\tAES0\t\tAES1\t\tAES2\t\tAES3\t\tAES4");
-            
-            // Arrays to store results
-            int[][] distPunderKPunderKi = new int[5][128];
-            byte[][][] statePunderKi = new byte[5][128][16]; // Store P under K_i
-            byte[][] stateKi = new byte[128][16];
-            
-            // Reset P under K
-            for (byte[] statePunderK1 : statePunderK) {
-                // Deep copy of Plaintext
-                System.arraycopy(stateP, 0, statePunderK1, 0, statePunderK[0].length);
-            }
-            
-            // Prepare P under K_i
-            for (byte[][] statePunderKi1 : statePunderKi) {
-                for (int j = 0; j < statePunderKi[0].length; j++) {
-                    // Deep copy of Plaintext
-                    System.arraycopy(stateP, 0, statePunderKi1[j], 0, statePunderKi[0][0].length);
-                }
-            }
-            
-            // Prepare keys
-            for (int i = 0; i < stateKi.length; i++) {
-                // Deep copy of key
-                System.arraycopy(stateK, 0, stateKi[i], 0, stateKi[0].length);
-                // Alter key
-                stateKi[i] = alteredState(stateKi[i], i);
-            }
+            avalanche.printTable(out, AvalancheAccumulator.EXPERIMENT_KEY);
             
-            // Round 0
-            out.print("0\t\t");
-            for (int i = 0; i < statePunderKi.length; i++) {
-                for (int j = 0; j < statePunderKi[0].length; j++) {
-                    distPunderKPunderKi[i][j] = hammingDist(statePunderK[i], statePunderKi[i][j]); // Calculate hamming distance
-                }
-                out.print("" + average(distPunderKPunderKi[i]) + "\t\t"); // Print average distance
-            }
-            out.println();
-            
-            // AddRoundKey
-            for (int i = 0; i < 5; i++) {
-                statePunderK[i] = addRoundKey(statePunderK[i], stateK);
-                for (int j = 0; j < statePunderKi[0].length; j++) {
-                    statePunderKi[i][j] = addRoundKey(statePunderKi[i][j], stateKi[j]);
-                }
-            }
-            
-            // Round 1-10
-            for (int i = 1; i < 11; i++) {
-                out.print("" + i + "\t\t");
-                for (int j = 0; j < statePunderKi.length; j++) {
-                    statePunderK[j] = round(statePunderK[j], stateK, i, j); // Apply operations to P under K
-                    for (int k = 0; k < statePunderKi[0].length; k++) {
-                        statePunderKi[j][k] = round(statePunderKi[j][k], stateKi[k], i, j); // Apply operations to P under K_i
-                        distPunderKPunderKi[j][k] = hammingDist(statePunderK[j], statePunderKi[j][k]); // Calculate hamming distance
-                    }
-                    out.print("" + average(distPunderKPunderKi[j]) + "\t\t"); // Print average distance
-                }
-                out.println();
-            }
-            
-            out.close();
-            
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(Rijndael.class.getName()).log(Level.SEVERE, null, ex);
+            if (out.checkError()) throw new IOException("Cannot write " + output); // PrintWriter hides errors
         }
     }
     
@@ -355,10 +327,24 @@ public class Rijndael {
      * @param key decryption key
      */
     public void assignmentDecryption(String ciphertext, String key) {
-        
         try {
-            
-            PrintWriter out = new PrintWriter("output_decryption.txt");
+            assignmentDecryption(ciphertext, key, new File("output_decryption.txt"));
+        } catch (IOException ex) {
+            Logger.getLogger(Rijndael.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Method containing decryption.
+     * Save results to the given text file.
+     * @param ciphertext ciphertext
+     * @param key decryption key
+     * @param output output file
+     * @throws IOException if the output cannot be written
+     */
+    public void assignmentDecryption(String ciphertext, String key, File output) throws IOException {
+        
+        try (PrintWriter out = new PrintWriter(output)) {
             
             // Encryption
             out.println("DECRYPTION");
@@ -376,10 +362,8 @@ public class Rijndael {
             
             out.println("Plaintext P:\t" + convertToString(stateP));
             out.println("Running time:\t" + (endTime-startTime) + " ms");
-            out.close();
             
-        } catch (FileNotFoundException ex) {
-            Logger.getLogger(Rijndael.class.getName()).log(Level.SEVERE, null, ex);
+            if (out.checkError()) throw new IOException("Cannot write " + output); // PrintWriter hides errors
         }
     }
     
@@ -454,7 +438,7 @@ public class Rijndael {
      * @param state input state
      * @return modified state
      */
-    private byte[] mixColumns(byte[] state) {
+    byte[] mixColumns(byte[] state) {
         // Create Galois field for calculations
         GaloisField gf = new GaloisField(FIELD_SIZE, IRREDUCIBLE_POLYNOMIAL);
         byte[] result = new byte[state.length]; // Result will be stored here
@@ -501,7 +485,7 @@ public class Rijndael {
      * @param state input state
      * @return modified state
      */
-    private byte[] invMixColumns(byte[] state) {
+    byte[] invMixColumns(byte[] state) {
         // Create Galois field for calculations
         GaloisField gf = new GaloisField(FIELD_SIZE, IRREDUCIBLE_POLYNOMIAL);
         byte[] result = new byte[state.length]; // Result will be stored here
@@ -548,7 +532,7 @@ public class Rijndael {
      * @param key en/decryption key
      * @return modified state
      */
-    private byte[] addRoundKey(byte[] state, byte[] key) {
+    byte[] addRoundKey(byte[] state, byte[] key) {
         // State XORed with key.
         return xor(state, key);
     }
@@ -562,7 +546,9 @@ public class Rijndael {
      * @param key initial cipher key
      * @return expanded set of keys
      */
-    private byte[][] expand(byte[] key) {
+    byte[][] expand(byte[] key) {
+        KeyExpansionEvent event = CipherMetrics.ENABLED ? new KeyExpansionEvent() : null;
+        if (event != null) event.begin();
         // For this algorithm, store 44 words in two-dimensional array
         byte[][] result = new byte[44][4];
         // First 4 Words are simply the cipher key
@@ -581,7 +567,11 @@ public class Rijndael {
             // New word is last word XORed with 4th last word
             result[i] = xor(result[i-4], temp);
         }
-                
+        if (event != null) {
+            event.commit();
+            CipherMetrics.keyExpansion();
+        }
+        
         return result;
     }
     
@@ -678,7 +668,7 @@ public class Rijndael {
      * @param pos position to alter
      * @return altered state
      */
-    private byte[] alteredState(byte[] state, int pos) {
+    byte[] alteredState(byte[] state, int pos) {
         state[pos/8] ^= (byte)Math.pow(2, 7-pos%8);
         return state;
     }
@@ -689,7 +679,7 @@ public class Rijndael {
      * @param b state
      * @return hamming distance
      */
-    private int hammingDist(byte[] a, byte[] b) {
+    int hammingDist(byte[] a, byte[] b) {
         int result = 0;
         for (int i = 0; i < a.length; i++) { // go through indiv bytes
             byte x = a[i];
@@ -705,30 +695,14 @@ public class Rijndael {
         return result;
     }
     
-    /**
-     * Compute the arithmetic mean of an array.
-     * Assumed from task description that values are to be rounded to integers.
-     * @param values array
-     * @return average
-     */
-    private int average(int[] values) {
-        int result = 0;
-        for (int i: values) result += i;
-        return (int)Math.round((result*1.0d)/values.length);
-    }
-    
     /**
      * Convert a String of 0 and 1 to byte[] state.
      * @param input String of 0 and 1
      * @return byte[] state
      */
-    private byte[] convertFromString(String input) {
-        assert(input.length()==128);
+    byte[] convertFromString(String input) {
         byte[] result = new byte[16];
-        for (int i = 0; i < 16; i++) {
-            // Use Integer.parseInt with base 2
-            result[i] = (byte)Integer.parseInt(input.substring(8*i, 8*i+8), 2);
-        }
+        BlockCodec.decodeBinary(input, result, 0);
         return result;
     }
     
@@ -737,13 +711,12 @@ public class Rijndael {
      * @param input byte[] state
      * @return String of 0 and 1
      */
-    private String convertToString(byte[] state) {
-        String result = "";
-        for (int i = 0; i < state.length; i++) {
-            // Use Integer.toBinaryString -> Have to add 0xff to avoid negative
-            // Additionally make sure that empty space is filled with 0's
-            result = result + String.format("%8s", Integer.toBinaryString(state[i] & 0xff)).replace(" ", "0");
+    String convertToString(byte[] state) {
+        char[] result = new char[8*state.length];
+        for (int i = 0; i < result.length; i++) {
+            // Take bits from most to least significant, add 0xff to avoid negative
+            result[i] = (char)('0' + (((state[i/8] & 0xff) >> (7-i%8)) & 1));
         }
-        return result;
+        return new String(result);
     }
-}
\ No newline at end of file
+}
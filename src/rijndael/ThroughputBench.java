@@ -0,0 +1,169 @@
+package rijndael;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+
+/**
+ * Throughput and latency measurement of a block engine on the current host.
+ * Every thread runs its own engine instance on its own buffers. After a
+ * warm-up phase, every call is timed with System.nanoTime and recorded in a
+ * per-thread histogram.
+ */
+public class ThroughputBench {
+
+    private final Engine engine;
+    private final boolean decrypt;
+    private final int threads;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final int batchSize;
+    private final int distinctKeys;
+    private final double ghz; // Clock rate for cycles per byte, 0 if unknown
+
+    // Phases, set by the coordinating thread
+    private volatile boolean measuring = false;
+    private volatile boolean stopped = false;
+
+    /**
+     * Create a new measurement.
+     * Options:
+     * --engine name   block engine (default reference)
+     * --mode m        encrypt or decrypt (default encrypt)
+     * --threads n     number of threads (default 1)
+     * --warmup s      warm-up seconds (default 5)
+     * --duration s    measurement seconds (default 10)
+     * --batch n       blocks per call (default 1)
+     * --keys n        distinct keys cycled through (default 16)
+     * --ghz f         clock rate for cycles per byte (default: as reported
+     *                 by the operating system, which may differ from the
+     *                 actual rate under turbo or power saving)
+     * @param options options
+     */
+    public ThroughputBench(Options options) {
+        engine = Engine.of(options.get("engine", "reference"));
+        String mode = options.get("mode", "encrypt");
+        if (!mode.equals("encrypt") && !mode.equals("decrypt"))
+            throw new IllegalArgumentException("Mode must be encrypt or decrypt: " + mode);
+        decrypt = mode.equals("decrypt");
+        threads = options.getInt("threads", 1);
+        warmupNanos = (long)(Double.parseDouble(options.get("warmup", "5"))*1e9);
+        durationNanos = (long)(Double.parseDouble(options.get("duration", "10"))*1e9);
+        batchSize = options.getInt("batch", 1);
+        distinctKeys = options.getInt("keys", 16);
+        ghz = options.has("ghz") ? Double.parseDouble(options.get("ghz", null)) : osGhz();
+        if (threads < 1 || batchSize < 1 || distinctKeys < 1 || durationNanos <= 0)
+            throw new IllegalArgumentException("Threads, batch, keys and duration must be positive");
+        if (warmupNanos < 0) throw new IllegalArgumentException("Warmup must not be negative");
+    }
+
+    /**
+     * Run the measurement and print a report.
+     * @param out report destination
+     * @throws InterruptedException if interrupted while waiting for threads
+     */
+    public void run(PrintStream out) throws InterruptedException {
+        final LatencyHistogram[] histograms = new LatencyHistogram[threads];
+        final CyclicBarrier start = new CyclicBarrier(threads+1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int id = t;
+            histograms[id] = new LatencyHistogram();
+            workers[t] = new Thread(() -> work(id, histograms[id], start), "bench-" + t);
+            workers[t].start();
+        }
+
+        // Warm-up, then measure for the configured duration
+        try {
+            start.await();
+        } catch (BrokenBarrierException ex) {
+            throw new IllegalStateException(ex);
+        }
+        Thread.sleep(warmupNanos / 1000000, (int)(warmupNanos % 1000000));
+        long begin = System.nanoTime();
+        measuring = true;
+        Thread.sleep(durationNanos / 1000000, (int)(durationNanos % 1000000));
+        stopped = true;
+        long elapsed = System.nanoTime() - begin;
+        for (Thread worker: workers) worker.join();
+
+        LatencyHistogram all = new LatencyHistogram();
+        for (LatencyHistogram h: histograms) all.merge(h);
+        long bytes = all.count()*batchSize*BlockCodec.BLOCK;
+        double seconds = elapsed/1e9;
+
+        out.println("BENCHMARK");
+        out.println("Engine:\t\t" + engine.name().toLowerCase(Locale.ROOT) + " (" + (decrypt ? "decrypt" : "encrypt") + ")");
+        out.println("Threads:\t" + threads);
+        out.println("Batch:\t\t" + batchSize + " blocks per call, " + distinctKeys + " distinct keys");
+        out.printf("Duration:\t%.3f s after %.3f s warm-up%n", seconds, warmupNanos/1e9);
+        out.println("Calls:\t\t" + all.count());
+        out.printf("Throughput:\t%.2f MB/s, %.0f blocks/s%n", bytes/seconds/1e6, all.count()*batchSize/seconds);
+        if (ghz > 0) out.printf("Cycles/byte:\t%.1f (at %.2f GHz per thread)%n", threads*seconds*ghz*1e9/bytes, ghz);
+        else out.println("Cycles/byte:\tunknown (pass --ghz)");
+        out.println("Latency per call (ns):");
+        out.println("p50:\t\t" + all.percentile(50));
+        out.println("p99:\t\t" + all.percentile(99));
+        out.println("p99.9:\t\t" + all.percentile(99.9));
+        out.println("max:\t\t" + all.max());
+    }
+
+    /**
+     * Body of one worker thread.
+     * @param id thread index
+     * @param histogram latency histogram of this thread
+     * @param start barrier to start all threads at once
+     */
+    private void work(int id, LatencyHistogram histogram, CyclicBarrier start) {
+        BlockEngine blockEngine = engine.create();
+        Random random = new Random(id);
+        byte[] blocks = new byte[BlockCodec.BLOCK*batchSize];
+        byte[] keys = new byte[BlockCodec.BLOCK*batchSize];
+        byte[] pool = new byte[BlockCodec.BLOCK*distinctKeys];
+        random.nextBytes(blocks);
+        random.nextBytes(pool);
+        int nextKey = 0;
+        try {
+            start.await();
+        } catch (Exception ex) {
+            return;
+        }
+        while (!stopped) {
+            // Take the keys of this call from the pool
+            for (int i = 0; i < batchSize; i++) {
+                System.arraycopy(pool, BlockCodec.BLOCK*nextKey, keys, BlockCodec.BLOCK*i, BlockCodec.BLOCK);
+                if (++nextKey == distinctKeys) nextKey = 0;
+            }
+            long t0 = System.nanoTime();
+            if (decrypt) blockEngine.decryptBlocks(blocks, keys, batchSize);
+            else blockEngine.encryptBlocks(blocks, keys, batchSize);
+            long t1 = System.nanoTime();
+            if (measuring) histogram.record(t1 - t0);
+        }
+    }
+
+    /**
+     * Clock rate reported by the operating system.
+     * @return rate in GHz, 0 if unknown
+     */
+    private static double osGhz() {
+        Path cpuinfo = Paths.get("/proc/cpuinfo");
+        try {
+            List<String> lines = Files.readAllLines(cpuinfo, StandardCharsets.US_ASCII);
+            for (String line: lines) {
+                if (line.startsWith("cpu MHz")) return Double.parseDouble(line.substring(line.indexOf(':')+1).trim())/1000;
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Not available on this platform
+        }
+        return 0;
+    }
+}